@@ -0,0 +1,141 @@
+package matching;
+
+import de.jungblut.glove.GloveRandomAccessReader;
+import org.toradocu.extractor.DocumentedMethod;
+import org.toradocu.extractor.Tag;
+import util.CandidateRepository;
+import util.GoalFileReader;
+import util.IdentifierTokenizer;
+import util.MappedGloveStore;
+import util.SimpleMethodCodeElement;
+import util.VectorKernel;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Inputs shared by all the benchmarks: the bundled goal and code elements files, and a synthetic
+ * GloVe generated on the fly, so that benchmarks don't depend on the 300d vectors being installed.
+ */
+final class BenchmarkFixture {
+
+    static final String FREECOL_UNIT = "net.sf.freecol.common.model.Unit";
+    static final String JGRAPHT_GRAPH = "org.jgrapht.Graph";
+
+    /** Same dimension as the GloVe vectors we use in the real runs. */
+    static final int DIMENSION = 300;
+    /** Words not occurring in the classes, so that lookups hit a realistically sized vocabulary. */
+    private static final int FILLER_WORDS = 50_000;
+    private static final long SEED = 42;
+
+    private BenchmarkFixture() {}
+
+    static File goalFile(String className) {
+        if (className.equals(FREECOL_UNIT)) return resource("goals/freecol-0.11.6/" + className + "_goal.json");
+        if (className.equals(JGRAPHT_GRAPH)) return resource("goals/jgrapht/" + className + "_goal.json");
+        throw new IllegalArgumentException("No goal file for " + className);
+    }
+
+    static File codeElementsFile(String className) {
+        return resource("code-elements/" + className + "_codeElements.json");
+    }
+
+    private static File resource(String name) {
+        return new File(BenchmarkFixture.class.getClassLoader().getResource(name).getFile());
+    }
+
+    static CandidateRepository loadCodeElements(String className) throws IOException {
+        return CandidateRepository.load(codeElementsFile(className));
+    }
+
+    static List<DocumentedMethod> loadMethods(String className) throws IOException {
+        List<DocumentedMethod> methods = new ArrayList<>();
+        try (GoalFileReader reader = new GoalFileReader(goalFile(className))) {
+            reader.forEachRemaining(methods::add);
+        }
+        return methods;
+    }
+
+    /**
+     * Writes a GloVe text file with a random vector for every word (and lemma) of the comments and
+     * of the code element identifiers of the given classes, plus filler words. Vectors are seeded,
+     * so every run of the benchmarks sees the same file.
+     *
+     * @param dir the directory where the file is written
+     * @param classNames the classes whose words must be in the vocabulary
+     * @return the GloVe text file
+     * @throws IOException if the file couldn't be written
+     */
+    static Path writeSyntheticGlove(Path dir, String... classNames) throws IOException {
+        Set<String> vocabulary = new TreeSet<>();
+        for (String className : classNames) {
+            for (DocumentedMethod method : loadMethods(className)) {
+                for (Tag tag : SemanticMatcher.translatedTags(method)) addWords(vocabulary, tag.getComment());
+            }
+            CandidateRepository codeElements = loadCodeElements(className);
+            for (String methodSignature : codeElements.methods()) {
+                for (SimpleMethodCodeElement codeElement : codeElements.forMethod(methodSignature)) {
+                    for (String id : codeElement.getCodeElementIds())
+                        addWords(vocabulary, String.join(" ", IdentifierTokenizer.split(id)));
+                }
+            }
+        }
+        for (int i = 0; i < FILLER_WORDS; i++) vocabulary.add("filler" + i);
+
+        Random random = new Random(SEED);
+        Path gloveTxt = dir.resolve("glove-synthetic.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(gloveTxt, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder();
+            for (String word : vocabulary) {
+                line.setLength(0);
+                line.append(word);
+                for (int i = 0; i < DIMENSION; i++) line.append(' ').append((float) random.nextGaussian());
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+        return gloveTxt;
+    }
+
+    private static void addWords(Set<String> vocabulary, String text) {
+        String cleaned = text.replaceAll("[^A-Za-z0-9! ]", " ");
+        for (String word : cleaned.split("\\s+"))
+            if (!word.isEmpty()) vocabulary.add(word.toLowerCase());
+        for (String lemma : LemmaCache.shared().lemmatize(cleaned))
+            if (lemma != null) vocabulary.add(lemma.toLowerCase());
+    }
+
+    /** Converts the synthetic GloVe text file to a mapped store next to it. */
+    static MappedGloveStore openStore(Path gloveTxt) throws IOException {
+        Path store = gloveTxt.resolveSibling("glove-synthetic.bin");
+        MappedGloveStore.convert(gloveTxt, store);
+        return new MappedGloveStore(store);
+    }
+
+    /**
+     * Looks up the vectors of several words at once.
+     *
+     * @param db gloVe database
+     * @param words the words to look up
+     * @return the vectors, in the iteration order of the words; null for words that have no vector
+     * @throws IOException if the database couldn't be read
+     */
+    static float[][] lookup(GloveRandomAccessReader db, Collection<String> words) throws IOException {
+        float[][] vectors = new float[words.size()][];
+        int i = 0;
+        for (String word : words) vectors[i++] = VectorKernel.accumulate(db, word, null);
+        return vectors;
+    }
+
+    /** Deletes a directory and everything in it, if it exists. */
+    static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package matching;
+
+import org.openjdk.jmh.annotations.*;
+import util.CandidateRepository;
+import util.MappedGloveStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end runs of the vector and conceptual matchers on a whole class, output included: the
+ * result files are written in the temporary directory of the benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class EndToEndBenchmarks {
+
+    @Param({BenchmarkFixture.FREECOL_UNIT, BenchmarkFixture.JGRAPHT_GRAPH})
+    public String className;
+
+    private Path dir;
+    private MappedGloveStore db;
+    private File goalFile;
+    private CandidateRepository codeElements;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("toradocu-semantic-bench");
+        db = BenchmarkFixture.openStore(BenchmarkFixture.writeSyntheticGlove(dir, className));
+        goalFile = BenchmarkFixture.goalFile(className);
+        codeElements = BenchmarkFixture.loadCodeElements(className);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        db.close();
+        BenchmarkFixture.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public int[] runVectorMatch() throws IOException {
+        SemanticMatcher matcher = new SemanticMatcher(className, true, false, false, -1);
+        matcher.setOutputDirectory(dir);
+        matcher.runVectorMatch(db, goalFile, codeElements);
+        return matcher.matchCounts();
+    }
+
+    @Benchmark
+    public int[] runConceptualSim() throws IOException {
+        ConceptualMatcher matcher = new ConceptualMatcher(className, true, false, false, -1);
+        matcher.setOutputDirectory(dir);
+        matcher.runConceptualSim(db, goalFile, codeElements);
+        return matcher.matchCounts();
+    }
+}
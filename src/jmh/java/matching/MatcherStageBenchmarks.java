@@ -0,0 +1,149 @@
+package matching;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.toradocu.extractor.DocumentedMethod;
+import org.toradocu.extractor.Tag;
+import util.CandidateRepository;
+import util.MappedGloveStore;
+import util.SimpleMethodCodeElement;
+import util.TokenDictionary;
+import util.VectorKernel;
+import util.WordMoversEngine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the hot stages of the matchers, each one run over all the tags (or all the code
+ * elements) of a class. The lemma cache is warm after the first iteration, as in a real run,
+ * except for {@link #parseCommentCold}, which annotates every comment again with CoreNLP.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MatcherStageBenchmarks {
+
+    @Param({BenchmarkFixture.FREECOL_UNIT, BenchmarkFixture.JGRAPHT_GRAPH})
+    public String className;
+
+    private Path dir;
+    private MappedGloveStore db;
+    private WordMoversEngine wm;
+    private SemanticMatcher matcher;
+    private SemanticMatcher posMatcher;
+    private ConceptualMatcher conceptualMatcher;
+    private CandidateRepository codeElements;
+    private CodeElementIndex index;
+
+    /** Every translated tag of the class, with its method and candidates. */
+    private List<Tag> tags;
+    private List<DocumentedMethod> tagMethods;
+    private List<float[][]> tagWordVectors;
+    private List<String> parsedComments;
+    private List<Set<SimpleMethodCodeElement>> tagCandidates;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("toradocu-semantic-bench");
+        Path gloveTxt = BenchmarkFixture.writeSyntheticGlove(dir, className);
+        db = BenchmarkFixture.openStore(gloveTxt);
+        wm = new WordMoversEngine(db);
+
+        matcher = new SemanticMatcher(className, true, false, false, -1);
+        posMatcher = new SemanticMatcher(className, true, true, false, -1);
+        conceptualMatcher = new ConceptualMatcher(className, true, false, false, -1);
+        codeElements = BenchmarkFixture.loadCodeElements(className);
+        index = new CodeElementIndex(matcher, db, codeElements);
+
+        tags = new ArrayList<>();
+        tagMethods = new ArrayList<>();
+        tagWordVectors = new ArrayList<>();
+        parsedComments = new ArrayList<>();
+        tagCandidates = new ArrayList<>();
+        for (DocumentedMethod method : BenchmarkFixture.loadMethods(className)) {
+            for (Tag tag : SemanticMatcher.translatedTags(method)) {
+                Set<String> words = matcher.parseComment(tag, method);
+                tags.add(tag);
+                tagMethods.add(method);
+                tagWordVectors.add(BenchmarkFixture.lookup(db, words));
+                parsedComments.add(String.join(" ", words));
+                tagCandidates.add(codeElements.forMethod(method.getSignature()));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        db.close();
+        BenchmarkFixture.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void parseComment(Blackhole bh) {
+        for (int i = 0; i != tags.size(); i++) bh.consume(matcher.parseComment(tags.get(i), tagMethods.get(i)));
+    }
+
+    /** Empties the annotated comments before every invocation. */
+    @State(Scope.Thread)
+    public static class ColdAnnotations {
+        @Setup(Level.Invocation)
+        public void clear() {
+            CommentAnnotator.shared().clear();
+        }
+    }
+
+    /** Parses with the POS selection, which annotates the whole comment, on an empty cache. */
+    @Benchmark
+    public void parseCommentCold(ColdAnnotations cold, Blackhole bh) {
+        for (int i = 0; i != tags.size(); i++) bh.consume(posMatcher.parseComment(tags.get(i), tagMethods.get(i)));
+    }
+
+    @Benchmark
+    public void getCodeElementVector(Blackhole bh) throws IOException {
+        float[] weights = matcher.codeElementWeights(null, TokenDictionary.shared().size());
+        for (String method : codeElements.methods()) {
+            for (SimpleMethodCodeElement codeElement : codeElements.forMethod(method))
+                bh.consume(matcher.getCodeElementVector(index.embeddings(), weights, index.get(codeElement).tokenIds));
+        }
+    }
+
+    @Benchmark
+    public void computeAlignmentMatrix(Blackhole bh) {
+        for (int i = 0; i != tags.size(); i++) {
+            float[][] comment = tagWordVectors.get(i);
+            double[] commentNorms = VectorKernel.norms(comment);
+            for (SimpleMethodCodeElement codeElement : tagCandidates.get(i)) {
+                CodeElementIndex.Entry entry = index.get(codeElement);
+                bh.consume(conceptualMatcher.computeAlignmentMatrix(comment, commentNorms, entry.words));
+            }
+        }
+    }
+
+    @Benchmark
+    public void buildTFIDFModel(Blackhole bh) {
+        TFIDFModel model = new TFIDFModel();
+        model.add(className, codeElements);
+        bh.consume(model);
+    }
+
+    @Benchmark
+    public void wmdDistance(Blackhole bh) throws IOException {
+        for (int i = 0; i != tags.size(); i++) {
+            WordMoversEngine.Document comment = wm.document(parsedComments.get(i));
+            List<WordMoversEngine.Document> documents = new ArrayList<>();
+            for (SimpleMethodCodeElement codeElement : tagCandidates.get(i)) {
+                List<String> ids = index.get(codeElement).documents;
+                if (!ids.isEmpty()) documents.add(wm.document(ids.get(ids.size() - 1)));
+            }
+            bh.consume(wm.distances(comment, documents.toArray(new WordMoversEngine.Document[0]),
+                    SemanticMatch.MAX_CANDIDATES, Double.POSITIVE_INFINITY, WMDMatcher.MISSING_DISTANCE));
+        }
+    }
+}
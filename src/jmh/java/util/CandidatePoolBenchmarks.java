@@ -0,0 +1,64 @@
+package util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exhaustive versus approximate scoring of a query against class- or project-wide candidate
+ * pools. The recall of the approximate search at every {@code searchK} is printed at setup, so
+ * that latency and recall can be read together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CandidatePoolBenchmarks {
+
+    private static final int DIMENSION = 300;
+    private static final int QUERIES = 64;
+
+    @Param({"1000", "10000", "100000"})
+    public int poolSize;
+
+    @Param({"100", "500"})
+    public int searchK;
+
+    private PackedVectors pool;
+    private RandomProjectionForest forest;
+    private float[][] queries;
+    private double[] queryNorms;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        float[][] vectors = new float[poolSize][DIMENSION];
+        for (float[] vector : vectors)
+            for (int i = 0; i != DIMENSION; i++) vector[i] = (float) random.nextGaussian();
+        queries = new float[QUERIES][DIMENSION];
+        for (float[] query : queries)
+            for (int i = 0; i != DIMENSION; i++) query[i] = (float) random.nextGaussian();
+        queryNorms = VectorKernel.norms(queries);
+
+        pool = new PackedVectors(vectors);
+        forest = new RandomProjectionForest(vectors, 10, 16, 42);
+        System.out.printf("%nrecall@5 with %d of %d candidates: %.3f%n",
+                searchK, poolSize, forest.recall(queries, 5, searchK));
+    }
+
+    @Benchmark
+    public double[] exhaustive() {
+        int q = next++ % QUERIES;
+        return pool.cosineDistances(queries[q], queryNorms[q]);
+    }
+
+    @Benchmark
+    public double[] approximate() {
+        int q = next++ % QUERIES;
+        return pool.cosineDistances(queries[q], queryNorms[q], forest.candidates(queries[q], searchK));
+    }
+}
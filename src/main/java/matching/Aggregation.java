@@ -0,0 +1,26 @@
+package matching;
+
+/**
+ * How the vector match sums the GloVe vectors of the words of a comment or of a code element.
+ */
+public enum Aggregation {
+    /** Every word has the same weight. */
+    SUM,
+    /**
+     * Words of the code elements appearing in at least half of the code elements are dropped, the
+     * others have the same weight (the {@code tfid} option).
+     */
+    BINARY_CUTOFF,
+    /** Every word is weighted by its inverse document frequency. */
+    TFIDF,
+    /**
+     * Every word is weighted by its smooth inverse frequency {@code a / (a + p(w))}, where
+     * {@code p(w)} is the probability of the word among the code element words.
+     */
+    SIF;
+
+    /** @return true if the weights depend on the document frequencies of the words */
+    boolean usesFrequencies() {
+        return this != SUM;
+    }
+}
@@ -0,0 +1,368 @@
+package matching;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import util.CandidateRepository;
+import util.MappedGloveStore;
+import util.Precision;
+import util.StatsUtil;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Matches all the classes of a project in a single JVM: the goal files ({@code <class>_goal.json})
+ * and code elements files ({@code <class>_codeElements.json}) found in a directory tree are paired
+ * by class name, and the classes are matched by a pool of workers.
+ *
+ * The embedding store, CoreNLP, the lemma and annotation caches, the match cache and the TF-IDF
+ * model are loaded once and shared by all the workers. Every class writes its own result files in
+ * the output directory; a report with the counts of every class and matcher, and their totals, is
+ * written at the end. A missing store is converted from {@code --glove-text}, with
+ * {@code --trim-store} only keeping the {@link CorpusVocabulary} of the input classes.
+ *
+ * Run with {@code mvn compile exec:java -Dexec.mainClass=matching.BatchRunner
+ * -Dexec.args="--input <dir> --glove <store>"}, or {@code --help} for all the options.
+ */
+public class BatchRunner {
+
+    static final String GOAL_SUFFIX = "_goal.json";
+    static final String CODE_ELEMENTS_SUFFIX = "_codeElements.json";
+    static final String REPORT = "report.csv";
+
+    @Parameter(names = "--input", description = "Directory searched for goal and code elements files", required = true)
+    private String input;
+
+    @Parameter(names = "--glove", description = "Mapped GloVe store", required = true)
+    private String glove;
+
+    @Parameter(names = "--glove-text", description = "GloVe text file, converted to the store if it doesn't exist")
+    private String gloveText;
+
+    @Parameter(names = "--trim-store", description = "Convert --glove-text keeping only the words of the input classes")
+    private boolean trimStore;
+
+    @Parameter(names = "--output", description = "Directory of the result files and of the report")
+    private String output = "batch-output";
+
+    @Parameter(names = "--matchers", description = "Matchers to run: vector, conceptual, wmd")
+    private List<String> matchers = new ArrayList<>(Arrays.asList("vector", "conceptual", "wmd"));
+
+    @Parameter(names = "--threads", description = "Classes matched in parallel")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = "--no-stopwords", description = "Keep the stopwords")
+    private boolean keepStopwords;
+
+    @Parameter(names = "--no-pos", description = "Don't select the comment words by part of speech")
+    private boolean noPosSelect;
+
+    @Parameter(names = "--tfid", description = "Drop the code element words common to half of the code elements")
+    private boolean tfid;
+
+    @Parameter(names = "--aggregation", description = "Vector aggregation: SUM, BINARY_CUTOFF, TFIDF, SIF")
+    private String aggregation;
+
+    @Parameter(names = "--pc-removal", description = "Remove the first principal component of the vectors")
+    private boolean principalComponentRemoval;
+
+    @Parameter(names = "--precision", description = "Precision of the code element vectors: FLOAT32, FLOAT16, INT8")
+    private String precision = Precision.FLOAT32.name();
+
+    @Parameter(names = "--threshold", description = "Distance (similarity for the conceptual matcher) threshold, -1 for none")
+    private float threshold = -1;
+
+    @Parameter(names = "--top-k", description = "Candidates retained for every tag")
+    private int topK = SemanticMatch.MAX_CANDIDATES;
+
+    @Parameter(names = "--compact", description = "Write every match on a single line")
+    private boolean compact;
+
+    @Parameter(names = "--match-cache", description = "Results of the previous runs, loaded and saved")
+    private String matchCacheFile;
+
+    @Parameter(names = "--lemma-cache", description = "Lemmas of the previous runs, loaded and saved")
+    private String lemmaCacheFile;
+
+    @Parameter(names = "--tfidf-model", description = "TF-IDF model of the project, loaded, extended and saved")
+    private String tfidfModelFile;
+
+    @Parameter(names = {"--help", "-h"}, help = true, description = "Prints this help")
+    private boolean help;
+
+    /** The goal and code elements files of a class. */
+    static class ClassFiles {
+        final String className;
+        File goal;
+        File codeElements;
+        /** True if several files of the same kind were found for the class. */
+        boolean duplicated;
+
+        ClassFiles(String className) {
+            this.className = className;
+        }
+    }
+
+    /** The outcome of a matcher on a class. */
+    static class ClassReport {
+        final String className;
+        final String matcher;
+        /** Correct, partially correct and failed matches; null if the match failed. */
+        final int[] counts;
+        final long millis;
+
+        ClassReport(String className, String matcher, int[] counts, long millis) {
+            this.className = className;
+            this.matcher = matcher;
+            this.counts = counts;
+            this.millis = millis;
+        }
+    }
+
+    public static void main(String[] args) {
+        BatchRunner runner = new BatchRunner();
+        JCommander commander = new JCommander(runner);
+        commander.setProgramName("BatchRunner");
+        try {
+            commander.parse(args);
+        } catch (ParameterException e) {
+            System.err.println(e.getMessage());
+            commander.usage();
+            System.exit(1);
+        }
+        if (runner.help) {
+            commander.usage();
+            return;
+        }
+        try {
+            runner.run();
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Matches every class of the input directory and writes the report.
+     *
+     * @return the reports of every class and matcher, sorted by class
+     * @throws IOException if the input couldn't be read, or the store or the report written
+     */
+    List<ClassReport> run() throws IOException {
+        for (String matcher : matchers)
+            if (!Arrays.asList("vector", "conceptual", "wmd").contains(matcher))
+                throw new IllegalArgumentException("Unknown matcher " + matcher);
+        Precision vectorPrecision = Precision.valueOf(precision);
+        Aggregation vectorAggregation = aggregation == null ? null : Aggregation.valueOf(aggregation);
+
+        List<ClassFiles> classes = classFiles(Paths.get(input));
+        Path outputDirectory = Paths.get(output);
+        Files.createDirectories(outputDirectory);
+
+        if (lemmaCacheFile != null) LemmaCache.shared().load(Paths.get(lemmaCacheFile));
+        MatchCache matchCache = null;
+        if (matchCacheFile != null) {
+            matchCache = new MatchCache();
+            matchCache.load(Paths.get(matchCacheFile));
+        }
+
+        Path store = Paths.get(glove);
+        boolean usesFrequencies = vectorAggregation != null ? vectorAggregation.usesFrequencies() : tfid;
+        TFIDFModel tfidfModel = usesFrequencies ? new TFIDFModel() : null;
+        if (tfidfModel != null && tfidfModelFile != null) tfidfModel.load(Paths.get(tfidfModelFile));
+        CorpusVocabulary vocabulary = !Files.exists(store) && gloveText != null && trimStore ? new CorpusVocabulary() : null;
+        scanClasses(classes, tfidfModel, vocabulary);
+        if (tfidfModel != null && tfidfModelFile != null) tfidfModel.save(Paths.get(tfidfModelFile));
+        if (!Files.exists(store) && gloveText != null) {
+            Set<String> keep = vocabulary != null ? vocabulary.words() : null;
+            MappedGloveStore.convert(Paths.get(gloveText), store, MappedGloveStore.Encoding.FLOAT32, keep);
+        }
+
+        List<ClassReport> reports = new ArrayList<>();
+        try (MappedGloveStore db = new MappedGloveStore(store)) {
+            MatchCache cache = matchCache;
+            ExecutorService workers = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<List<ClassReport>>> results = new ArrayList<>();
+                for (ClassFiles files : classes) {
+                    results.add(workers.submit(() -> match(db, files, tfidfModel, cache, vectorPrecision,
+                            vectorAggregation, outputDirectory)));
+                }
+                for (int i = 0; i != results.size(); i++) {
+                    try {
+                        reports.addAll(results.get(i).get());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    } catch (ExecutionException e) {
+                        // The code elements couldn't be read: the class is reported as failed.
+                        e.getCause().printStackTrace();
+                        for (String name : matchers) reports.add(new ClassReport(classes.get(i).className, name, null, 0));
+                    }
+                }
+            } finally {
+                workers.shutdownNow();
+            }
+        }
+
+        if (lemmaCacheFile != null) LemmaCache.shared().save(Paths.get(lemmaCacheFile));
+        if (matchCache != null) matchCache.save(Paths.get(matchCacheFile));
+        writeReport(outputDirectory.resolve(REPORT), reports);
+        System.out.println(classes.size() + " classes matched, report in " + outputDirectory.resolve(REPORT));
+        System.out.println("Lemma cache: " + LemmaCache.shared().hits() + " hits, "
+                + LemmaCache.shared().misses() + " misses; annotated comments: "
+                + CommentAnnotator.shared().hits() + " hits, " + CommentAnnotator.shared().misses() + " misses");
+        return reports;
+    }
+
+    /**
+     * Adds every class to the TF-IDF model and to the vocabulary of the store, in a single pass
+     * reading the code elements of one class at a time, so that the whole project is never in
+     * memory.
+     *
+     * @param tfidfModel the model of the project, null if the aggregation doesn't use it
+     * @param vocabulary the words the matchers may look up, null if the store is not trimmed
+     */
+    private void scanClasses(List<ClassFiles> classes, TFIDFModel tfidfModel, CorpusVocabulary vocabulary)
+            throws IOException {
+        if (tfidfModel == null && vocabulary == null) return;
+        for (ClassFiles files : classes) {
+            CandidateRepository codeElements = CandidateRepository.load(files.codeElements);
+            if (tfidfModel != null) tfidfModel.add(files.className, codeElements);
+            if (vocabulary != null) {
+                // Comments are parsed as configured.
+                SemanticMatcher matcher = new SemanticMatcher(files.className, !keepStopwords, !noPosSelect, tfid, threshold);
+                vocabulary.add(matcher, files.goal, codeElements);
+            }
+        }
+    }
+
+    /** Runs all the selected matchers on a class, one after the other. */
+    private List<ClassReport> match(MappedGloveStore db, ClassFiles files, TFIDFModel tfidfModel, MatchCache cache,
+                                    Precision vectorPrecision, Aggregation vectorAggregation, Path outputDirectory)
+            throws IOException {
+        CandidateRepository codeElements = CandidateRepository.load(files.codeElements);
+        List<ClassReport> reports = new ArrayList<>();
+        // The classes matched at the same time share the cores for the annotation of the comments.
+        int annotationThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / threads);
+        for (String name : matchers) {
+            long start = System.nanoTime();
+            SemanticMatcher matcher;
+            if (name.equals("conceptual"))
+                matcher = new ConceptualMatcher(files.className, !keepStopwords, !noPosSelect, tfid, threshold);
+            else if (name.equals("wmd"))
+                matcher = new WMDMatcher(files.className, !keepStopwords, !noPosSelect, tfid, threshold);
+            else
+                matcher = new SemanticMatcher(files.className, !keepStopwords, !noPosSelect, tfid, threshold);
+            matcher.setOutputDirectory(outputDirectory);
+            matcher.setCompactOutput(compact);
+            matcher.setAnnotationThreads(annotationThreads);
+            matcher.setTopK(topK);
+            matcher.setPrecision(vectorPrecision);
+            if (vectorAggregation != null) matcher.setAggregation(vectorAggregation);
+            matcher.setPrincipalComponentRemoval(principalComponentRemoval);
+            matcher.setTFIDFModel(tfidfModel);
+            matcher.setResultCache(cache);
+
+            int[] counts = null;
+            try {
+                if (matcher instanceof ConceptualMatcher)
+                    ((ConceptualMatcher) matcher).runConceptualSim(db, files.goal, codeElements);
+                else if (matcher instanceof WMDMatcher)
+                    ((WMDMatcher) matcher).runWmdMatch(db, files.goal, codeElements);
+                else
+                    matcher.runVectorMatch(db, files.goal, codeElements);
+                counts = StatsUtil.countMatches(matcher);
+            } catch (IOException | RuntimeException e) {
+                // Reported as a failed match, the next matchers still run.
+                e.printStackTrace();
+            }
+            reports.add(new ClassReport(files.className, name, counts, (System.nanoTime() - start) / 1_000_000));
+        }
+        return reports;
+    }
+
+    /**
+     * Finds the classes having both a goal file and a code elements file in a directory tree.
+     * Files without their counterpart, and classes having several goal or code elements files
+     * (the same class name in different directories), are reported and skipped.
+     *
+     * @param input the directory to search
+     * @return the files of every class, sorted by class name
+     * @throws IOException if the directory couldn't be read
+     */
+    static List<ClassFiles> classFiles(Path input) throws IOException {
+        Map<String, ClassFiles> classes = new TreeMap<>();
+        try (Stream<Path> files = Files.walk(input)) {
+            Iterator<Path> iterator = files.filter(Files::isRegularFile).iterator();
+            while (iterator.hasNext()) {
+                Path file = iterator.next();
+                String name = file.getFileName().toString();
+                if (name.endsWith(GOAL_SUFFIX)) {
+                    ClassFiles classFiles = classes.computeIfAbsent(
+                            name.substring(0, name.length() - GOAL_SUFFIX.length()), ClassFiles::new);
+                    if (classFiles.goal != null) classFiles.duplicated = true;
+                    classFiles.goal = file.toFile();
+                } else if (name.endsWith(CODE_ELEMENTS_SUFFIX)) {
+                    ClassFiles classFiles = classes.computeIfAbsent(
+                            name.substring(0, name.length() - CODE_ELEMENTS_SUFFIX.length()), ClassFiles::new);
+                    if (classFiles.codeElements != null) classFiles.duplicated = true;
+                    classFiles.codeElements = file.toFile();
+                }
+            }
+        }
+
+        List<ClassFiles> complete = new ArrayList<>();
+        for (ClassFiles files : classes.values()) {
+            if (files.duplicated) System.err.println("Skipping " + files.className
+                    + ": several goal or code elements files in different directories");
+            else if (files.goal != null && files.codeElements != null) complete.add(files);
+            else System.err.println("Skipping " + files.className + ": "
+                    + (files.goal == null ? "no goal file" : "no code elements file"));
+        }
+        return complete;
+    }
+
+    /**
+     * Writes the counts of every class and matcher, followed by the totals of every matcher.
+     * Failed runs are reported with no counts.
+     */
+    static void writeReport(Path report, List<ClassReport> reports) throws IOException {
+        reports.sort(Comparator.comparing((ClassReport r) -> r.className).thenComparing(r -> r.matcher));
+        Map<String, long[]> totals = new TreeMap<>();
+        try (BufferedWriter writer = Files.newBufferedWriter(report)) {
+            writer.append("Class,Matcher,Correct matches,Partially correct matches,Failed matches,Milliseconds\n");
+            for (ClassReport r : reports) {
+                writer.append(r.className).append(',').append(r.matcher).append(',');
+                if (r.counts == null) writer.append("error,error,error");
+                else writer.append(r.counts[0] + "," + r.counts[1] + "," + r.counts[2]);
+                writer.append(',').append(String.valueOf(r.millis)).append('\n');
+
+                long[] total = totals.computeIfAbsent(r.matcher, m -> new long[5]);
+                if (r.counts != null) {
+                    for (int i = 0; i != 3; i++) total[i] += r.counts[i];
+                } else total[4]++;
+                total[3] += r.millis;
+            }
+            writer.append('\n');
+            writer.append("Total,Matcher,Correct matches,Partially correct matches,Failed matches,Milliseconds,Failed classes\n");
+            for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+                long[] total = entry.getValue();
+                writer.append("Total,").append(entry.getKey()).append(',')
+                        .append(total[0] + "," + total[1] + "," + total[2] + "," + total[3] + "," + total[4])
+                        .append('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package matching;
+
+import de.jungblut.glove.GloveRandomAccessReader;
+import util.CandidateRepository;
+import util.IdentifierTokenizer;
+import util.PackedVectors;
+import util.Precision;
+import util.RandomProjectionForest;
+import util.SimpleMethodCodeElement;
+import util.TokenDictionary;
+import util.TokenEmbeddings;
+import util.VectorKernel;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Everything the matchers need to know about the code elements of a class, computed once before
+ * the matching starts rather than once per tag: lemmatized identifiers, word sets, and the summed
+ * GloVe vector of every code element together with its norm, weighted according to the
+ * aggregation of the matcher. The vectors used for scoring are
+ * packed at the precision of the matcher. Words are interned in the shared {@link TokenDictionary},
+ * and vectors are looked up by token ID.
+ */
+class CodeElementIndex {
+
+    /** The precomputed representation of a single code element. */
+    static class Entry {
+        final SimpleMethodCodeElement codeElement;
+        /** Camel case-splitted and lemmatized identifiers, one array per identifier. */
+        final List<String[]> lemmatizedIds;
+        /** Token IDs of {@link #lemmatizedIds}, one array per identifier. */
+        final int[][] tokenIds;
+        /** Words of the first identifier, after stopwords removal (conceptual similarity). */
+        final Set<String> wordSet;
+        /** Every identifier as a single string, after stopwords removal (WMD). */
+        final List<String> documents;
+        /** Sum of the vectors of the identifiers words, null if none of them is in GloVe. */
+        final float[] vector;
+        final double norm;
+        /** Vectors of the words of {@link #wordSet}, in its iteration order; null without a database. */
+        final PackedVectors words;
+
+        Entry(SimpleMethodCodeElement codeElement, List<String[]> lemmatizedIds, int[][] tokenIds,
+              Set<String> wordSet, List<String> documents, float[] vector, PackedVectors words) {
+            this.codeElement = codeElement;
+            this.lemmatizedIds = lemmatizedIds;
+            this.tokenIds = tokenIds;
+            this.wordSet = wordSet;
+            this.documents = documents;
+            this.vector = vector;
+            this.norm = vector == null ? 0 : VectorKernel.norm(vector);
+            this.words = words;
+        }
+
+        /** @return the same entry with another vector */
+        Entry withVector(float[] vector) {
+            return new Entry(codeElement, lemmatizedIds, tokenIds, wordSet, documents, vector, words);
+        }
+    }
+
+    /** The candidates of a single method, with their vectors packed for batched scoring. */
+    static class Group {
+        final List<SimpleMethodCodeElement> candidates;
+        final PackedVectors vectors;
+        /** Approximate index of the vectors, null if the candidates are scored exhaustively. */
+        final RandomProjectionForest forest;
+
+        Group(List<SimpleMethodCodeElement> candidates, PackedVectors vectors, RandomProjectionForest forest) {
+            this.candidates = candidates;
+            this.vectors = vectors;
+            this.forest = forest;
+        }
+    }
+
+    /** Trees of the approximate indexes: enough for a good recall on a few thousands candidates. */
+    static final int FOREST_TREES = 10;
+    static final int FOREST_LEAF_SIZE = 16;
+    /** Seed of the random splits of the indexes, so that the same candidates give the same results. */
+    static final long FOREST_SEED = 42;
+    /** Power iterations computing the principal component: it converges in a few dozens. */
+    static final int PRINCIPAL_COMPONENT_ITERATIONS = 50;
+
+    private final Map<SimpleMethodCodeElement, Entry> entries = new HashMap<>();
+    private final Map<String, Group> groups = new HashMap<>();
+    /** Candidates fetched from the approximate indexes, 0 if there are none. */
+    private final int approximateSearch;
+    /** Precision of the packed vectors. */
+    private final Precision precision;
+    /** Vectors of the tokens, null without a database. */
+    private final TokenEmbeddings embeddings;
+    private final SemanticMatcher matcher;
+    /** Document frequencies of the words, null if the aggregation of the matcher doesn't use them. */
+    private final TFIDFModel tfidfModel;
+    /** Removed from every vector, null if the principal component removal is disabled. */
+    private final float[] principalComponent;
+
+    /**
+     * Builds the index of a set of code elements according to the configuration of the matcher.
+     *
+     * @param matcher the matcher the index is built for
+     * @param db gloVe database, null if code element vectors are not needed
+     * @param codeElements the code elements of the class, grouped by method
+     * @throws IOException if the database couldn't be read
+     */
+    CodeElementIndex(SemanticMatcher matcher, GloveRandomAccessReader db,
+                     CandidateRepository codeElements) throws IOException {
+        this.approximateSearch = db == null ? 0 : matcher.approximateSearch;
+        this.precision = matcher.precision();
+        this.matcher = matcher;
+        TokenDictionary dictionary = TokenDictionary.shared();
+        this.embeddings = db == null ? null : new TokenEmbeddings(db, dictionary);
+        this.tfidfModel = matcher.aggregation().usesFrequencies() ? matcher.tfidfModel(codeElements) : null;
+        for (String method : codeElements.methods()) {
+            for (SimpleMethodCodeElement codeElement : codeElements.forMethod(method)) {
+                List<String[]> lemmatizedIds = new ArrayList<>();
+                List<String> documents = new ArrayList<>();
+                for (String id : codeElement.getCodeElementIds()) {
+                    String[] lemmas = SemanticMatcher.lemmatizeId(id);
+                    lemmatizedIds.add(lemmas);
+                    Set<String> words = matcher.removeStopWords(lemmas.clone());
+                    documents.add(IdentifierTokenizer.joinWords(words).toLowerCase());
+                }
+                Set<String> wordSet = lemmatizedIds.isEmpty()
+                        ? new HashSet<>()
+                        : matcher.removeStopWords(lemmatizedIds.get(0).clone());
+                int[][] tokenIds = new int[lemmatizedIds.size()][];
+                for (int i = 0; i != tokenIds.length; i++) tokenIds[i] = dictionary.intern(lemmatizedIds.get(i));
+                PackedVectors words = null;
+                if (db != null) words = new PackedVectors(embeddings.lookup(dictionary.intern(wordSet)), precision);
+                entries.put(codeElement,
+                        new Entry(codeElement, lemmatizedIds, tokenIds, wordSet, documents, null, words));
+            }
+        }
+
+        // The weights are known once every word of the class is in the dictionary.
+        float[] principalComponent = null;
+        if (db != null) {
+            float[] weights = matcher.codeElementWeights(tfidfModel, dictionary.size());
+            for (Map.Entry<SimpleMethodCodeElement, Entry> entry : entries.entrySet()) {
+                float[] vector = matcher.getCodeElementVector(embeddings, weights, entry.getValue().tokenIds);
+                entry.setValue(entry.getValue().withVector(vector));
+            }
+            if (matcher.principalComponentRemoval()) {
+                float[][] vectors = new float[entries.size()][];
+                int i = 0;
+                for (Entry entry : entries.values()) vectors[i++] = entry.vector;
+                principalComponent = VectorKernel.principalComponent(vectors, PRINCIPAL_COMPONENT_ITERATIONS);
+                if (principalComponent != null) {
+                    for (Map.Entry<SimpleMethodCodeElement, Entry> entry : entries.entrySet()) {
+                        float[] vector = entry.getValue().vector;
+                        if (vector == null) continue;
+                        VectorKernel.removeProjection(vector, principalComponent);
+                        entry.setValue(entry.getValue().withVector(vector));
+                    }
+                }
+            }
+        }
+        this.principalComponent = principalComponent;
+
+        for (String method : codeElements.methods())
+            groups.put(method, pack(new ArrayList<>(codeElements.forMethod(method))));
+    }
+
+    /**
+     * Builds the vector of a parsed comment, weighted and projected like the ones of the code
+     * elements. Comment words are never dropped.
+     *
+     * @param words the words of the parsed comment
+     * @return the comment vector, null if none of its words is in the database
+     * @throws IOException if the database couldn't be read
+     */
+    float[] commentVector(Set<String> words) throws IOException {
+        float[] vector = null;
+        for (int token : embeddings.dictionary().intern(words))
+            vector = embeddings.accumulate(token, matcher.commentWeight(tfidfModel, token), vector);
+        if (vector != null && principalComponent != null) VectorKernel.removeProjection(vector, principalComponent);
+        return vector;
+    }
+
+    /**
+     * @param codeElement a code element of the indexed class
+     * @return the precomputed representation of the code element
+     */
+    Entry get(SimpleMethodCodeElement codeElement) {
+        return entries.get(codeElement);
+    }
+
+    /** @return the vectors of the tokens, null if the index was built without a database */
+    TokenEmbeddings embeddings() {
+        return embeddings;
+    }
+
+    /**
+     * @param methodSignature the signature of a method of the indexed class
+     * @return the candidates of the method with their packed vectors, null if it has no candidates
+     */
+    Group group(String methodSignature) {
+        return groups.get(methodSignature);
+    }
+
+    /**
+     * Packs the vectors of an arbitrary list of indexed code elements. When the approximate search
+     * is enabled and there are more candidates than it would fetch, they're indexed as well.
+     *
+     * @param candidates code elements of the indexed class
+     * @return the candidates with their packed vectors, in the same order
+     */
+    Group pack(List<SimpleMethodCodeElement> candidates) {
+        float[][] vectors = new float[candidates.size()][];
+        for (int i = 0; i != vectors.length; i++) vectors[i] = entries.get(candidates.get(i)).vector;
+        RandomProjectionForest forest = null;
+        if (approximateSearch > 0 && vectors.length > approximateSearch)
+            forest = new RandomProjectionForest(vectors, FOREST_TREES, FOREST_LEAF_SIZE, FOREST_SEED);
+        return new Group(candidates, new PackedVectors(vectors, precision), forest);
+    }
+}
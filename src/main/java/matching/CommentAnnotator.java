@@ -0,0 +1,140 @@
+package matching;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import util.BoundedCache;
+
+import java.util.*;
+
+/**
+ * Bounded, thread-safe memo of the tag comments annotated by CoreNLP.
+ *
+ * A single pass (tokenization, sentence splitting, POS tagging and lemmatization) gives both the
+ * parts of speech used by the POS selection and the lemmas of the words, without dependency
+ * parsing. The same comments ("if x is null") are repeated by hundreds of methods, so the tokens
+ * are stored by comment text and shared among all the matchers. The pipeline is also the one
+ * {@link LemmaCache} lemmatizes the identifiers with, so CoreNLP models are loaded only once.
+ */
+public class CommentAnnotator {
+
+    /** A token of a comment. */
+    static final class Token {
+        final String word;
+        final String tag;
+        /** Null if CoreNLP gave no lemma. */
+        final String lemma;
+
+        Token(String word, String tag, String lemma) {
+            this.word = word;
+            this.tag = tag;
+            this.lemma = lemma;
+        }
+    }
+
+    private static final int DEFAULT_CAPACITY = 100_000;
+    private static final CommentAnnotator SHARED = new CommentAnnotator(DEFAULT_CAPACITY);
+
+    /** The only pipeline of the matchers: it's expensive to build, and built only once it's needed. */
+    private static class Pipeline {
+        static final StanfordCoreNLP INSTANCE;
+
+        static {
+            Properties props = new Properties();
+            props.setProperty("annotators", "tokenize, ssplit, pos, lemma");
+            INSTANCE = new StanfordCoreNLP(props);
+        }
+    }
+
+    private final BoundedCache<String, List<Token>> tokens;
+
+    public CommentAnnotator(int capacity) {
+        this.tokens = new BoundedCache<>(capacity);
+    }
+
+    /** @return the annotator shared by all the matchers */
+    public static CommentAnnotator shared() {
+        return SHARED;
+    }
+
+    /**
+     * Annotates a comment, reusing the result of a previous call on the same (normalized) text.
+     *
+     * @param text the comment
+     * @return the tokens of the comment. The list can't be modified, since it's shared with all
+     *     the callers.
+     */
+    List<Token> annotate(String text) {
+        String key = LemmaCache.normalize(text);
+        List<Token> cached = tokens.get(key);
+        if (cached != null) return cached;
+
+        Annotation annotation = new Annotation(key);
+        Pipeline.INSTANCE.annotate(annotation);
+        List<Token> computed = tokens(annotation);
+        tokens.put(key, computed);
+        return computed;
+    }
+
+    /**
+     * Runs the pipeline on a text, without caching the result.
+     *
+     * @param text the text
+     * @return the tokens of the text, with their parts of speech and lemmas
+     */
+    static List<CoreLabel> labels(String text) {
+        Annotation annotation = new Annotation(text);
+        Pipeline.INSTANCE.annotate(annotation);
+        List<CoreLabel> labels = annotation.get(CoreAnnotations.TokensAnnotation.class);
+        return labels != null ? labels : Collections.<CoreLabel>emptyList();
+    }
+
+    /**
+     * Annotates many comments at once, as a multi-document batch spread over several threads, so
+     * that the following {@link #annotate(String)} calls find them. Comments already annotated are
+     * skipped.
+     *
+     * @param texts the comments
+     * @param threads the number of annotation threads
+     */
+    void annotateAll(Collection<String> texts, int threads) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (String text : texts) {
+            String key = LemmaCache.normalize(text);
+            if (!tokens.containsKey(key)) keys.add(key);
+        }
+        if (keys.isEmpty()) return;
+
+        List<Annotation> annotations = new ArrayList<>(keys.size());
+        for (String key : keys) annotations.add(new Annotation(key));
+        Pipeline.INSTANCE.annotate(annotations, threads);
+        Iterator<String> key = keys.iterator();
+        for (Annotation annotation : annotations) tokens.put(key.next(), tokens(annotation));
+    }
+
+    private static List<Token> tokens(Annotation annotation) {
+        List<Token> result = new ArrayList<>();
+        List<CoreLabel> labels = annotation.get(CoreAnnotations.TokensAnnotation.class);
+        if (labels != null) {
+            for (CoreLabel label : labels) result.add(new Token(label.word(), label.tag(), label.lemma()));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    public long hits() {
+        return tokens.hits();
+    }
+
+    public long misses() {
+        return tokens.misses();
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+
+    public void clear() {
+        tokens.clear();
+    }
+}
@@ -0,0 +1,60 @@
+package matching;
+
+import org.toradocu.extractor.DocumentedMethod;
+import org.toradocu.extractor.Tag;
+import util.CandidateRepository;
+import util.GoalFileReader;
+import util.SimpleMethodCodeElement;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The words the matchers may look up in GloVe for a set of classes: the lemmas of the translated
+ * tag comments and of the code element identifiers, both as they are and lowercased. An embedding
+ * store trimmed to these words (see {@code MappedGloveStore.convert}) gives the same results of
+ * the full one on those classes. {@link BatchRunner} trims the store it converts with
+ * {@code --trim-store}.
+ */
+public class CorpusVocabulary {
+
+    private final Set<String> words = new HashSet<>();
+
+    /**
+     * Adds the words of a class.
+     *
+     * @param matcher the matcher whose comment parsing is used
+     * @param goalFile the class goal file
+     * @param codeElements the Java code elements of the class, grouped by method
+     * @throws IOException if the goal file couldn't be read
+     */
+    public void add(SemanticMatcher matcher, File goalFile, CandidateRepository codeElements) throws IOException {
+        try (GoalFileReader methods = new GoalFileReader(goalFile)) {
+            while (methods.hasNext()) {
+                DocumentedMethod method = methods.next();
+                for (Tag tag : SemanticMatcher.translatedTags(method))
+                    for (String word : matcher.parseComment(tag, method)) add(word);
+            }
+        }
+        for (String method : codeElements.methods()) {
+            for (SimpleMethodCodeElement codeElement : codeElements.forMethod(method)) {
+                for (String id : codeElement.getCodeElementIds())
+                    for (String word : SemanticMatcher.lemmatizeId(id)) add(word);
+            }
+        }
+    }
+
+    private void add(String word) {
+        if (word == null || word.isEmpty()) return;
+        words.add(word);
+        words.add(word.toLowerCase());
+    }
+
+    /** @return the words collected so far */
+    public Set<String> words() {
+        return Collections.unmodifiableSet(words);
+    }
+}
@@ -0,0 +1,115 @@
+package matching;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import edu.stanford.nlp.ling.CoreLabel;
+import util.BoundedCache;
+import util.IdentifierTokenizer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Bounded, thread-safe cache of the lemmas computed by CoreNLP, through the same pipeline that
+ * annotates the comments (see {@link CommentAnnotator}).
+ *
+ * The same identifiers (and often the same comments) are lemmatized over and over for every tag of
+ * every method, so the lemmas are stored by normalized text and shared among all the matchers.
+ * The content of the cache can be saved at the end of a run and reloaded by the next one.
+ */
+public class LemmaCache {
+
+    private static final int DEFAULT_CAPACITY = 100_000;
+    private static final LemmaCache SHARED = new LemmaCache(DEFAULT_CAPACITY);
+
+    private final BoundedCache<String, List<String>> lemmas;
+
+    public LemmaCache(int capacity) {
+        this.lemmas = new BoundedCache<>(capacity);
+    }
+
+    /** @return the cache shared by all the matchers */
+    public static LemmaCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Lemmatizes a text, reusing the result of a previous call on the same (normalized) text.
+     *
+     * @param text the text to lemmatize
+     * @return one lemma per token of the text, null where CoreNLP gave no lemma. The list can't be
+     *     modified, since it's shared with all the callers.
+     */
+    public List<String> lemmatize(String text) {
+        String key = normalize(text);
+        List<String> cached = lemmas.get(key);
+        if (cached != null) return cached;
+
+        List<CoreLabel> labels = CommentAnnotator.labels(key);
+        String[] result = new String[labels.size()];
+        for (int i = 0; i != result.length; i++) {
+            CoreLabel label = labels.get(i);
+            if (label != null) result[i] = label.lemma();
+        }
+        List<String> computed = Collections.unmodifiableList(Arrays.asList(result));
+        lemmas.put(key, computed);
+        return computed;
+    }
+
+    static String normalize(String text) {
+        return IdentifierTokenizer.collapseWhitespace(text);
+    }
+
+    public long hits() {
+        return lemmas.hits();
+    }
+
+    public long misses() {
+        return lemmas.misses();
+    }
+
+    public int size() {
+        return lemmas.size();
+    }
+
+    public void clear() {
+        lemmas.clear();
+    }
+
+    /**
+     * Saves a snapshot of the cache in a JSON file.
+     *
+     * @param snapshot the file to write
+     * @throws IOException if the file couldn't be written
+     */
+    public void save(Path snapshot) throws IOException {
+        Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+        try (BufferedWriter writer = Files.newBufferedWriter(snapshot)) {
+            gson.toJson(lemmas.snapshot(), writer);
+        }
+    }
+
+    /**
+     * Reloads a snapshot written by {@link #save(Path)}, if it exists. Entries beyond the capacity
+     * of the cache are ignored.
+     *
+     * @param snapshot the file to read
+     * @throws IOException if the file couldn't be read
+     */
+    public void load(Path snapshot) throws IOException {
+        if (!Files.exists(snapshot)) return;
+        try (BufferedReader reader = Files.newBufferedReader(snapshot)) {
+            Map<String, List<String>> saved = new Gson().fromJson(reader,
+                    new TypeToken<Map<String, List<String>>>() {}.getType());
+            if (saved == null) return;
+            for (Map.Entry<String, List<String>> entry : saved.entrySet()) {
+                if (!lemmas.putIfRoom(entry.getKey(), Collections.unmodifiableList(entry.getValue()))) return;
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package matching;
+
+import org.toradocu.extractor.Tag;
+import util.SimpleMethodCodeElement;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Thread-safe cache of the results of the matching of single tags, to be saved at the end of a run
+ * and reloaded by the next one: tags whose result is found are not parsed nor scored again.
+ *
+ * A result is keyed by a SHA-256 hash of the matcher type and configuration, the tag comment and
+ * the candidate set, so any change to them is a miss. The GloVe vectors are not part of the key:
+ * the cache file has to be deleted when they change. Only the results used or computed by a run
+ * are saved, so results of removed classes and tags don't accumulate.
+ */
+public class MatchCache {
+
+    private static final int MAGIC = 0x544d4332; // "TMC2"
+
+    /** The hash of a tag match, with its candidates in a canonical order. */
+    static class Key {
+        final ByteBuffer digest;
+        final List<SimpleMethodCodeElement> candidates;
+
+        Key(ByteBuffer digest, List<SimpleMethodCodeElement> candidates) {
+            this.digest = digest;
+            this.candidates = candidates;
+        }
+    }
+
+    /** A retained match, candidates stored by their position in {@link Key#candidates}. */
+    private static class Result {
+        final String method;
+        final String parsedComment;
+        final int[] candidates;
+        final double[] scores;
+
+        Result(String method, String parsedComment, int[] candidates, double[] scores) {
+            this.method = method;
+            this.parsedComment = parsedComment;
+            this.candidates = candidates;
+            this.scores = scores;
+        }
+    }
+
+    /** Results loaded from a previous run and not used yet. */
+    private final Map<ByteBuffer, Result> previous = new ConcurrentHashMap<>();
+    /** Results used or computed by this run. */
+    private final Map<ByteBuffer, Result> current = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Computes the key of the match of a tag.
+     *
+     * @param configuration the matcher type and configuration
+     * @param comment the original tag comment
+     * @param candidates the code elements the tag is matched against
+     * @return the key of the match
+     */
+    static Key key(String configuration, String comment, Collection<SimpleMethodCodeElement> candidates) {
+        // Candidates come from hash sets: sort them on their content, so that the key is stable.
+        Map<SimpleMethodCodeElement, String> identities = new HashMap<>();
+        for (SimpleMethodCodeElement candidate : candidates) identities.put(candidate, identity(candidate));
+        List<SimpleMethodCodeElement> sorted = new ArrayList<>(candidates);
+        sorted.sort(Comparator.comparing(identities::get));
+
+        MessageDigest digest = sha256();
+        update(digest, configuration);
+        update(digest, comment);
+        for (SimpleMethodCodeElement candidate : sorted) update(digest, identities.get(candidate));
+        return new Key(ByteBuffer.wrap(digest.digest()), sorted);
+    }
+
+    /**
+     * Rebuilds the cached match of a tag.
+     *
+     * @param key the key of the match
+     * @param tag the tag, which may differ from the cached one in anything but its comment
+     * @param threshold the distance threshold of the matcher
+     * @return the match, with no candidates if none was retained; null if the match is not cached
+     */
+    SemanticMatch get(Key key, Tag tag, float threshold) {
+        Result result = current.get(key.digest);
+        if (result == null) {
+            result = previous.remove(key.digest);
+            if (result != null) current.put(key.digest, result);
+        }
+        if (result == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+
+        SemanticMatch match = new SemanticMatch(tag, result.method, result.parsedComment, threshold);
+        LinkedHashMap<SimpleMethodCodeElement, Double> candidates = new LinkedHashMap<>();
+        for (int i = 0; i != result.candidates.length; i++)
+            candidates.put(key.candidates.get(result.candidates[i]), result.scores[i]);
+        match.setCandidates(candidates);
+        return match;
+    }
+
+    /**
+     * Stores the match of a tag.
+     *
+     * @param key the key of the match
+     * @param match the match, with its retained candidates (possibly none)
+     * @throws IllegalArgumentException if a retained candidate is not one of the candidates of the key
+     */
+    void put(Key key, SemanticMatch match) {
+        Map<SimpleMethodCodeElement, Integer> positions = new HashMap<>();
+        for (int i = 0; i != key.candidates.size(); i++) positions.put(key.candidates.get(i), i);
+
+        int[] candidates = new int[match.candidates.size()];
+        double[] scores = new double[candidates.length];
+        int i = 0;
+        for (Map.Entry<SimpleMethodCodeElement, Double> entry : match.candidates.entrySet()) {
+            Integer position = positions.get(entry.getKey());
+            if (position == null)
+                throw new IllegalArgumentException(entry.getKey().getCodeElementName() + " is not a candidate of the key");
+            candidates[i] = position;
+            scores[i++] = entry.getValue();
+        }
+        current.put(key.digest, new Result(match.method, match.parsedComment, candidates, scores));
+    }
+
+    /** @return the number of tag matches found in the cache */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** @return the number of tag matches not found in the cache */
+    public long misses() {
+        return misses.get();
+    }
+
+    /** @return the number of cached tag matches */
+    public int size() {
+        return previous.size() + current.size();
+    }
+
+    /**
+     * Saves the results used or computed since the cache was created.
+     *
+     * @param file the file to write, replaced if it exists
+     * @throws IOException if the file couldn't be written
+     */
+    public void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            // Results are added concurrently: take a snapshot to write a consistent count.
+            List<Map.Entry<ByteBuffer, Result>> entries = new ArrayList<>(current.entrySet());
+            out.writeInt(entries.size());
+            for (Map.Entry<ByteBuffer, Result> entry : entries) {
+                Result result = entry.getValue();
+                out.write(entry.getKey().array());
+                out.writeUTF(result.method);
+                out.writeUTF(result.parsedComment);
+                out.writeInt(result.candidates.length);
+                for (int i = 0; i != result.candidates.length; i++) {
+                    out.writeInt(result.candidates[i]);
+                    out.writeDouble(result.scores[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the results saved by a previous run, if any.
+     *
+     * @param file the file written by {@link #save(Path)}
+     * @throws IOException if the file couldn't be read or is not a cache file
+     */
+    public void load(Path file) throws IOException {
+        if (!Files.exists(file)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC) throw new IOException(file + " is not a match cache");
+            int size = in.readInt();
+            for (int r = 0; r < size; r++) {
+                byte[] digest = new byte[32];
+                in.readFully(digest);
+                String method = in.readUTF();
+                String parsedComment = in.readUTF();
+                int[] candidates = new int[in.readInt()];
+                double[] scores = new double[candidates.length];
+                for (int i = 0; i != candidates.length; i++) {
+                    candidates[i] = in.readInt();
+                    scores[i] = in.readDouble();
+                }
+                previous.put(ByteBuffer.wrap(digest), new Result(method, parsedComment, candidates, scores));
+            }
+        }
+    }
+
+    private static String identity(SimpleMethodCodeElement candidate) {
+        List<String> ids = candidate.getCodeElementIds() == null
+                ? Collections.<String>emptyList()
+                : new ArrayList<>(candidate.getCodeElementIds());
+        Collections.sort(ids);
+        return candidate.getForMethod() + '\u0000' + candidate.getCodeElementName() + '\u0000'
+                + candidate.getReturnType() + '\u0000' + String.join("\u0000", ids);
+    }
+
+    private static void update(MessageDigest digest, String text) {
+        byte[] bytes = String.valueOf(text).getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+}
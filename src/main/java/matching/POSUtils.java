@@ -1,12 +1,5 @@
 package matching;
 
-import edu.stanford.nlp.ling.IndexedWord;
-import edu.stanford.nlp.semgraph.SemanticGraph;
-import org.toradocu.extractor.DocumentedMethod;
-import org.toradocu.translator.StanfordParser;
-
-import java.util.List;
-
 /**
  * Created by arianna on 29/05/17.
  *
@@ -14,22 +7,16 @@ import java.util.List;
  */
 public class POSUtils {
 
-    public static String findSubjectPredicate(String comment, DocumentedMethod method) {
-        String result = "";
-        for (SemanticGraph sg : StanfordParser.getSemanticGraphs(comment, method)) {
-            //Search nouns, their adjectives and adverbs.
-
-            List<IndexedWord> nouns = sg.getAllNodesByPartOfSpeechPattern("NN(.*)");
-            List<IndexedWord> adjs = sg.getAllNodesByPartOfSpeechPattern("JJ(.*)");
-            List<IndexedWord> advs = sg.getAllNodesByPartOfSpeechPattern("RB(.*)");
-            for (IndexedWord noun : nouns) result += noun.word() + " ";
-            for (IndexedWord adj : adjs) result += adj.word() + " ";
-            for (IndexedWord adv : advs) result += adv.word() + " ";
-
-            //Search for a verb.
-            List<IndexedWord> verbs = sg.getAllNodesByPartOfSpeechPattern("VB(.*)");
-            for (IndexedWord v : verbs) result += v.word() + " ";
-        }
-        return result.replaceAll("\\s+", " ").trim();
+    /**
+     * The subject and the predicate of a comment are made of its nouns, their adjectives and
+     * adverbs, and its verbs.
+     *
+     * @param posTag the Penn Treebank tag of a word
+     * @return true if the word is part of the subject or of the predicate
+     */
+    public static boolean isSubjectPredicate(String posTag) {
+        if (posTag == null) return false;
+        return posTag.startsWith("NN") || posTag.startsWith("JJ")
+                || posTag.startsWith("RB") || posTag.startsWith("VB");
     }
 }
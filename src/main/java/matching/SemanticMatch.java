@@ -30,6 +30,9 @@ public class SemanticMatch implements Comparable<SemanticMatch>{
     String parsedComment;
 
 
+    /** Number of candidates retained by default. */
+    public static final int MAX_CANDIDATES = 5;
+
     /**
      * Method code element that have a semantic distance from the comment which is below the
      * threshold,i.e. candidates for the correct translation.
@@ -81,15 +84,16 @@ public class SemanticMatch implements Comparable<SemanticMatch>{
         return method;
     }
 
+    public Tag getTag() {
+        return tag;
+    }
+
+    /**
+     * @param orderedDistances the retained candidates, best first, already limited to the
+     *     configured number of candidates
+     */
     public void setCandidates(LinkedHashMap<SimpleMethodCodeElement, Double> orderedDistances) {
-        int i=0;
-        this.candidates = new LinkedHashMap<SimpleMethodCodeElement, Double>();
-        for (Map.Entry<SimpleMethodCodeElement, Double> entry : orderedDistances.entrySet()) {
-            this.candidates.put(entry.getKey(), entry.getValue());
-            i++;
-            if(i==5)
-                return;
-        }
+        this.candidates = new LinkedHashMap<SimpleMethodCodeElement, Double>(orderedDistances);
     }
 
     public LinkedHashMap<SimpleMethodCodeElement, Double> getCandidates() {
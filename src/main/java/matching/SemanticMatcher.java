@@ -1,22 +1,32 @@
 package matching;
 
-import com.google.gson.reflect.TypeToken;
-import de.jungblut.distance.CosineDistance;
 import de.jungblut.glove.GloveRandomAccessReader;
 import de.jungblut.math.DoubleVector;
-import edu.stanford.nlp.ling.CoreLabel;
 import org.toradocu.extractor.DocumentedMethod;
 import org.toradocu.extractor.Tag;
-import org.toradocu.translator.StanfordParser;
-import org.toradocu.util.GsonInstance;
+import util.CandidateRepository;
+import util.GoalFileReader;
+import util.IdentifierTokenizer;
+import util.MappedGloveStore;
+import util.MatchWriter;
 import util.OutputUtil;
+import util.Precision;
 import util.SimpleMethodCodeElement;
+import util.TokenDictionary;
+import util.TokenEmbeddings;
+import util.TopKSelector;
+import util.VectorKernel;
 
 import java.io.*;
-import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by arianna on 29/05/17.
@@ -28,15 +38,68 @@ import java.util.stream.Collectors;
  */
 public class SemanticMatcher {
 
-    static boolean stopwordsRemoval;
-    static boolean posSelect;
-    static boolean tfid;
-    static float distanceThreshold;
-    static List<String> stopwords;
-    public static String className;
-    public static String fileName;
-    /** Stores all the {@code SemanticMatch}es collected during a test. */
-    public static Set<SemanticMatch> semanticMatches;
+    /**
+     * The matching of a single tag against the code elements of its method. Each matcher has its own
+     * kind of match; {@link #matchAll} takes care of running them. The cache key of the match,
+     * null when results aren't cached, is to be passed on to {@link #retainMatches}.
+     */
+    interface TagMatch {
+        void match(Tag tag, DocumentedMethod method, Set<SimpleMethodCodeElement> codeElements,
+                   MatchCache.Key cacheKey) throws IOException;
+    }
+
+    final boolean stopwordsRemoval;
+    final boolean posSelect;
+    final boolean tfid;
+    final float distanceThreshold;
+    final List<String> stopwords;
+    /** The token IDs of the stopwords. */
+    private final BitSet stopwordIds;
+    public final String className;
+    public final String fileName;
+    /**
+     * Stores all the {@code SemanticMatch}es collected during a test, if they're kept: see
+     * {@link #setKeepMatches}. Tags may be matched concurrently, hence the concurrent set.
+     */
+    public final Set<SemanticMatch> semanticMatches;
+    /** Whether the matches are kept in {@link #semanticMatches}, besides being counted. */
+    private boolean keepMatches;
+    /** The number of matches whose top candidate is correct, partially correct or wrong. */
+    private final AtomicInteger correctMatches = new AtomicInteger();
+    private final AtomicInteger partiallyCorrectMatches = new AtomicInteger();
+    private final AtomicInteger failedMatches = new AtomicInteger();
+    /** Writes the matches of the running match, null when no match is running. */
+    private volatile MatchWriter resultWriter;
+    /** Whether results are written one per line, rather than pretty printed. */
+    private boolean compactOutput;
+    /** Maximum number of tags submitted to the executor and not yet matched. */
+    static final int MAX_PENDING_TASKS = 1024;
+    /** Number of methods whose comments are annotated together. */
+    static final int ANNOTATION_WINDOW = 256;
+    /** Threads annotating a window of comments. */
+    private int annotationThreads = Runtime.getRuntime().availableProcessors();
+    /** Runs the tag matches in parallel when set, otherwise they're run one at a time. */
+    private ExecutorService executor;
+    /** Number of candidates retained for every tag. */
+    private int topK = SemanticMatch.MAX_CANDIDATES;
+    /** Candidates fetched from an approximate index before the exact scoring, 0 to score them all. */
+    int approximateSearch;
+    /** Precision of the code element vectors scored by the vector and conceptual matches. */
+    private Precision precision = Precision.FLOAT32;
+    /** Results of previous runs, null if every tag is matched from scratch. */
+    private MatchCache resultCache;
+    /** Document frequencies of the whole project, null to compute them on the class being matched. */
+    private TFIDFModel tfidfModel;
+    /** The model of the class being matched, when there's no project model. */
+    private volatile TFIDFModel classTfidfModel;
+    /** Directory of the result files. */
+    private Path outputDirectory = Paths.get("");
+    /** How the vector match sums the word vectors. */
+    private Aggregation aggregation;
+    /** True to remove the first principal component of the code element vectors from all the vectors. */
+    private boolean principalComponentRemoval;
+    /** The smoothing {@code a} of the SIF weights. */
+    static final double SIF_SMOOTHING = 1e-3;
 
     SemanticMatcher(
             String className,
@@ -46,11 +109,12 @@ public class SemanticMatcher {
             float distanceThreshold) {
 
         this.tfid = tfid;
+        this.aggregation = tfid ? Aggregation.BINARY_CUTOFF : Aggregation.SUM;
         this.stopwordsRemoval = stopwordsRemoval;
         this.posSelect = posSelect;
         this.distanceThreshold = distanceThreshold;
         this.className = className;
-        semanticMatches = new HashSet<SemanticMatch>();
+        semanticMatches = ConcurrentHashMap.newKeySet();
 
         //TODO very naive list. Not the best to use.
         stopwords =
@@ -58,77 +122,397 @@ public class SemanticMatcher {
                         Arrays.asList(
                                 "true", "false", "the", "a", "if", "for", "be", "this", "do",
                                 "not", "of", "only", "already", "specify"));
+        stopwordIds = new BitSet();
+        for (String stopword : stopwords) stopwordIds.set(TokenDictionary.shared().intern(stopword));
 
         if (stopwordsRemoval) fileName = "semantic_" + className;
         else fileName = "semantic_noSW_" + className;
+    }
 
-        File file = new File(fileName);
-        try {
-            Files.deleteIfExists(file.toPath());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Keeps all the matches in {@link #semanticMatches}, as tests comparing them need; otherwise
+     * they're only counted and written to the result file, so memory doesn't grow with the class.
+     *
+     * @param keepMatches true to keep the matches, false (the default) otherwise
+     */
+    public void setKeepMatches(boolean keepMatches) {
+        this.keepMatches = keepMatches;
     }
 
+    /** @return the number of correct, partially correct and failed matches published so far */
+    public int[] matchCounts() {
+        return new int[]{correctMatches.get(), partiallyCorrectMatches.get(), failedMatches.get()};
+    }
 
-    Set<DocumentedMethod> readMethodsFromJson(File goalFile){
-        try (BufferedReader reader =
-                     Files.newBufferedReader(goalFile.toPath())){
+    /**
+     * @param compactOutput true to write every match on a single line of the result file, false
+     *     (the default) to pretty print it
+     */
+    public void setCompactOutput(boolean compactOutput) {
+        this.compactOutput = compactOutput;
+    }
 
-            Set<DocumentedMethod> methods = new HashSet<>();
-            methods.addAll(
-                    GsonInstance.gson()
-                            .fromJson(reader, new TypeToken<Set<DocumentedMethod>>() {}.getType()));
-            return methods;
-        } catch (IOException e) {
-            System.exit(1);
-        }
-        return null;
+    /**
+     * @param outputDirectory the directory where the result files are written, the working
+     *     directory by default
+     */
+    public void setOutputDirectory(Path outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    /** @return the directory where the result files are written */
+    public Path outputDirectory() {
+        return outputDirectory;
+    }
+
+    /**
+     * Enables the parallel matching: every tag of every method becomes a task of the executor.
+     * The executor is not shut down by the matcher.
+     *
+     * @param executor the executor running the tasks, null to match one tag at a time
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param annotationThreads the threads CoreNLP may use to annotate a window of comments, by
+     *     default one per core; lower it when many matchers run at the same time
+     */
+    public void setAnnotationThreads(int annotationThreads) {
+        if (annotationThreads < 1) throw new IllegalArgumentException("At least one thread is needed");
+        this.annotationThreads = annotationThreads;
+    }
+
+    /**
+     * @param topK the number of candidates retained for every tag, {@link SemanticMatch#MAX_CANDIDATES}
+     *     by default
+     */
+    public void setTopK(int topK) {
+        if (topK < 1) throw new IllegalArgumentException("topK must be positive, was " + topK);
+        this.topK = topK;
+    }
+
+    /**
+     * Stores the code element vectors at a reduced precision, and scores the comments directly
+     * against them. Must be set before the match is run.
+     *
+     * @param precision the precision of the code element vectors, {@link Precision#FLOAT32} by default
+     */
+    public void setPrecision(Precision precision) {
+        this.precision = precision;
+    }
+
+    /** @return the precision of the code element vectors */
+    public Precision precision() {
+        return precision;
+    }
+
+    /** @return the number of candidates retained for every tag */
+    int topK() {
+        return topK;
+    }
+
+    /**
+     * Enables the reuse of the results of previous runs: tags whose comment, candidates and
+     * matcher configuration didn't change are not matched again, and new results are added to
+     * the cache. The cache is neither loaded nor saved by the matcher.
+     *
+     * @param resultCache the cache of the results, null to match every tag
+     */
+    public void setResultCache(MatchCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Sets the document frequencies used by the TF-IDF filtering of the code element words, which
+     * otherwise are computed on the code elements of the class being matched. Must be set before
+     * the match is run.
+     *
+     * @param tfidfModel the model built on the whole project, null to use the class ones
+     */
+    public void setTFIDFModel(TFIDFModel tfidfModel) {
+        this.tfidfModel = tfidfModel;
+    }
+
+    /**
+     * Sets how the vector match sums the word vectors of comments and code elements. Must be set
+     * before the match is run.
+     *
+     * @param aggregation the aggregation, {@link Aggregation#BINARY_CUTOFF} by default with the
+     *     {@code tfid} option and {@link Aggregation#SUM} without
+     */
+    public void setAggregation(Aggregation aggregation) {
+        this.aggregation = aggregation;
+    }
+
+    /** @return how the vector match sums the word vectors */
+    public Aggregation aggregation() {
+        return aggregation;
+    }
+
+    /**
+     * Enables the removal of the common direction of the vectors, as SIF does: the first principal
+     * component of the code element vectors of the class is removed from them and from the comment
+     * vectors. Must be set before the match is run.
+     *
+     * @param principalComponentRemoval true to remove the component, false (the default) otherwise
+     */
+    public void setPrincipalComponentRemoval(boolean principalComponentRemoval) {
+        this.principalComponentRemoval = principalComponentRemoval;
+    }
+
+    /** @return true if the first principal component is removed from the vectors */
+    boolean principalComponentRemoval() {
+        return principalComponentRemoval;
+    }
+
+    /**
+     * @param codeElements the Java code elements of the class being matched, grouped by method
+     * @return the project model if set, otherwise a new model of the class
+     */
+    TFIDFModel tfidfModel(CandidateRepository codeElements) {
+        if (tfidfModel != null) return tfidfModel;
+        TFIDFModel model = new TFIDFModel();
+        model.add(className, codeElements);
+        classTfidfModel = model;
+        return model;
     }
 
+    /**
+     * Enables the approximate nearest neighbour search for large candidate sets: the vectors of
+     * the candidates of every method having more than {@code searchK} of them are indexed, and
+     * only the {@code searchK} nearest ones according to the index are scored exactly.
+     * The vector match is the only one using it. Must be set before the match is run.
+     *
+     * @param searchK the number of candidates scored exactly, 0 (the default) to score them all
+     */
+    public void setApproximateSearch(int searchK) {
+        if (searchK < 0) throw new IllegalArgumentException("searchK must not be negative, was " + searchK);
+        this.approximateSearch = searchK;
+    }
+
+
     /**
      * Takes a goal file of a certain class in order to extract all its {@code DocumentedMethod}s and
-     * the list of Java code elements that can be used in the translation.
+     * the list of Java code elements that can be used in the translation. Methods are read and
+     * matched one at a time.
      *
      * @param db
      * @param goalFile the class goal file
-     * @param codeElements the list of Java code elements for the translation
+     * @param codeElements the Java code elements for the translation, grouped by method
      */
-    void runVectorMatch(GloveRandomAccessReader db, File goalFile, Set<SimpleMethodCodeElement> codeElements) throws IOException {
-        Set<DocumentedMethod> methods = this.readMethodsFromJson(goalFile);
+    void runVectorMatch(GloveRandomAccessReader db, File goalFile, CandidateRepository codeElements) throws IOException {
+        CodeElementIndex index = new CodeElementIndex(this, threadSafe(db), codeElements);
 
-        for(DocumentedMethod m : methods){
-            HashSet<SimpleMethodCodeElement> referredCodeElements = codeElements
-                    .stream()
-                    .filter(forMethod -> forMethod.getForMethod().equals(m.getSignature()))
-                    .collect(Collectors.toCollection(HashSet::new));
+        run(goalFile, codeElements, false, false,
+                (tag, method, referredCodeElements, cacheKey) ->
+                        vectorsMatch(index, tag, method, index.group(method.getSignature()), cacheKey));
+    }
 
-            if(m.returnTag() != null){
-                String condition = m.returnTag().getCondition().get();
-                if(!condition.equals("")) {
-                    try {
-                        vectorsMatch(db, m.returnTag(), m, referredCodeElements);
-                    } catch (IOException e) {
-                        e.printStackTrace();
+    /**
+     * Streams the methods of a goal file through {@link #matchAll}, writing every match to the
+     * result file as soon as it's retained.
+     *
+     * @param goalFile the class goal file
+     * @param codeElements the Java code elements for the translation, grouped by method
+     * @param wmd true for the WMD result file
+     * @param concSim true for the conceptual similarity result file
+     * @param tagMatch the kind of match to run on every tag
+     * @throws IOException if the goal file couldn't be read or the result file written
+     */
+    void run(File goalFile, CandidateRepository codeElements, boolean wmd, boolean concSim, TagMatch tagMatch)
+            throws IOException {
+        try (GoalFileReader methods = new GoalFileReader(goalFile);
+             MatchWriter writer = OutputUtil.openResultWriter(this, wmd, concSim, compactOutput)) {
+            resultWriter = writer;
+            matchAll(methods, codeElements, tagMatch);
+        } finally {
+            resultWriter = null;
+        }
+    }
+
+    /**
+     * Matches every tag having a translation (the @return tag and the @throws tags) of every method,
+     * either sequentially or through the executor, and waits for all of them to complete.
+     * Methods are consumed as they come: when matching in parallel at most
+     * {@link #MAX_PENDING_TASKS} tags are waiting at any time, so memory stays bounded however
+     * long the goal file is.
+     *
+     * Methods are read in windows of {@link #ANNOTATION_WINDOW}: the comments of a window that
+     * were not matched by a previous run are annotated by CoreNLP in a single multithreaded batch,
+     * before any of its tags is matched.
+     *
+     * A tag whose match fails is reported on the standard error and left without match, the
+     * other tags are matched anyway. If the current thread is interrupted the tags still waiting
+     * are skipped, but the ones already running are waited for, so that nothing is published
+     * once the result file is closed.
+     *
+     * @param methods the methods of the class
+     * @param codeElements the Java code elements for the translation, grouped by method
+     * @param tagMatch the kind of match to run on every tag
+     */
+    void matchAll(Iterator<DocumentedMethod> methods, CandidateRepository codeElements, TagMatch tagMatch) {
+        Deque<Future<?>> pending = new ArrayDeque<>();
+        AtomicBoolean stopped = new AtomicBoolean();
+        MatchCache cache = resultCache;
+        // The same for all the tags, and not cheap to build.
+        String configuration = cache != null ? configuration() : null;
+        while(methods.hasNext()){
+            List<DocumentedMethod> tagMethods = new ArrayList<>();
+            List<Tag> tags = new ArrayList<>();
+            List<MatchCache.Key> cacheKeys = new ArrayList<>();
+            Set<String> comments = new LinkedHashSet<>();
+            for (int read = 0; read < ANNOTATION_WINDOW && methods.hasNext(); read++) {
+                DocumentedMethod m = methods.next();
+                for(Tag tag : translatedTags(m)){
+                    MatchCache.Key cacheKey = null;
+                    if (cache != null) {
+                        cacheKey = MatchCache.key(configuration, tag.getComment(), codeElements.forMethod(m.getSignature()));
+                        if (replay(cache, cacheKey, tag)) continue;
                     }
+                    tagMethods.add(m);
+                    tags.add(tag);
+                    cacheKeys.add(cacheKey);
+                    comments.add(annotatedText(tag));
                 }
             }
-            if(!m.throwsTags().isEmpty()){
-                for(Tag throwTag : m.throwsTags()){
-                    String condition = throwTag.getCondition().get();
-                    if(!condition.equals("")) {
-                        try {
-                            vectorsMatch(db, throwTag, m, referredCodeElements);
-                        } catch (IOException e) {
-                            e.printStackTrace();
+            CommentAnnotator.shared().annotateAll(comments, annotationThreads);
+
+            for (int i = 0; i != tags.size(); i++) {
+                DocumentedMethod m = tagMethods.get(i);
+                Tag tag = tags.get(i);
+                MatchCache.Key cacheKey = cacheKeys.get(i);
+                Set<SimpleMethodCodeElement> referredCodeElements = codeElements.forMethod(m.getSignature());
+                Runnable task = () -> {
+                    if (stopped.get()) return;
+                    try {
+                        tagMatch.match(tag, m, referredCodeElements, cacheKey);
+                    } catch (IOException | RuntimeException e) {
+                        // Whether sequential or parallel, a failed tag doesn't stop the others.
+                        e.printStackTrace();
+                    }
+                };
+                if (executor == null) task.run();
+                else {
+                    if (pending.size() == MAX_PENDING_TASKS) {
+                        if (!await(pending.peek())) {
+                            stop(pending, stopped);
+                            return;
                         }
+                        pending.poll();
                     }
+                    pending.add(executor.submit(task));
+                }
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            if (!await(pending.peek())) {
+                stop(pending, stopped);
+                return;
+            }
+            pending.poll();
+        }
+    }
+
+    /**
+     * Skips the tags still waiting and waits for the ones already running, after the current
+     * thread was interrupted, leaving it interrupted.
+     */
+    private static void stop(Deque<Future<?>> pending, AtomicBoolean stopped) {
+        stopped.set(true);
+        Thread.interrupted(); // cleared while waiting, or get() would throw at once
+        for (Future<?> future : pending) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // keep waiting: the task may still publish
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    break;
                 }
             }
         }
-        OutputUtil.exportTojson(false, false);
+        Thread.currentThread().interrupt();
     }
 
+    /**
+     * @param method a method of the goal file
+     * @return the tags of the method having a translation: the @return tag and the @throws tags
+     */
+    static List<Tag> translatedTags(DocumentedMethod method) {
+        List<Tag> tags = new ArrayList<>();
+        if(method.returnTag() != null) tags.add(method.returnTag());
+        tags.addAll(method.throwsTags());
+        tags.removeIf(tag -> tag.getCondition().get().equals(""));
+        return tags;
+    }
+
+    /**
+     * Publishes the cached match of a tag, if any.
+     *
+     * @return true if the match of the tag was cached
+     */
+    private boolean replay(MatchCache cache, MatchCache.Key cacheKey, Tag tag) {
+        SemanticMatch aMatch = cache.get(cacheKey, tag, distanceThreshold);
+        if (aMatch == null) return false;
+        if (!aMatch.candidates.isEmpty()) publish(aMatch);
+        return true;
+    }
+
+    /**
+     * @return everything the result of a tag match depends on, besides the tag comment and the
+     *     candidates: the kind of matcher and its configuration
+     */
+    String configuration() {
+        return getClass().getName() + " " + className + " stopwords=" + stopwordsRemoval + stopwords
+                + " pos=" + posSelect + " tfid=" + tfid + " threshold=" + distanceThreshold
+                + " topK=" + topK + " approximateSearch=" + approximateSearch + " precision=" + precision
+                + " aggregation=" + aggregation + " pcRemoval=" + principalComponentRemoval
+                + (aggregation.usesFrequencies()
+                        ? " tfidf=" + (tfidfModel != null ? tfidfModel : classTfidfModel).fingerprint()
+                        : "");
+    }
+
+    /** @return false if the current thread was interrupted while waiting */
+    private static boolean await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+        return true;
+    }
+
+    /**
+     * {@code GloveBinaryRandomAccessReader} seeks and reads a shared file, so its lookups can't be
+     * interleaved when matching in parallel. {@code MappedGloveStore} is already thread-safe.
+     */
+    GloveRandomAccessReader threadSafe(GloveRandomAccessReader db) {
+        if (executor == null || db == null || db instanceof MappedGloveStore) return db;
+        return new GloveRandomAccessReader() {
+            @Override
+            public synchronized boolean contains(String word) {
+                return db.contains(word);
+            }
+
+            @Override
+            public synchronized DoubleVector get(String word) throws IOException {
+                return db.get(word);
+            }
+
+            @Override
+            public void close() throws IOException {
+                db.close();
+            }
+        };
+    }
 
 
     /**
@@ -136,138 +520,204 @@ public class SemanticMatcher {
      *
      * @param tag the tag for which we want to produce a condition translation
      * @param method the method the tag belongs to
-     * @param codeElements the code elements that are possible candidates to use in the translation
+     * @param candidates the code elements that are possible candidates to use in the translation,
+     *     null if there's none
+     * @param cacheKey the cache key of the match, null if results aren't cached
      * @throws IOException if the GloVe database couldn't be read
      */
-    void vectorsMatch(GloveRandomAccessReader db, Tag tag, DocumentedMethod method, Set<SimpleMethodCodeElement> codeElements) throws IOException {
+    void vectorsMatch(CodeElementIndex index, Tag tag, DocumentedMethod method,
+                      CodeElementIndex.Group candidates, MatchCache.Key cacheKey) throws IOException {
         Set<String> commentWordSet = this.parseComment(tag, method);
-        String parsedComment = String.join(" ", commentWordSet).replaceAll("\\s+", " ").trim();
-        Map<String, Double> freq = new HashMap<String, Double>();
-        CosineDistance cos = new CosineDistance();
+        String parsedComment = IdentifierTokenizer.joinWords(commentWordSet);
 
-        DoubleVector commentVector = getCommentVector(commentWordSet, db);
-
-//      Map<MethodCodeElement, Double> distances = new HashMap<MethodCodeElement, Double>();
-        Map<SimpleMethodCodeElement, Double> distances = new HashMap<SimpleMethodCodeElement, Double>();
-
- //     Set<CodeElement<?>> codeElements = Matcher.codeElementsMatch(method, subject, predicate);
-//      Set<CodeElement<?>> codeElements = JavaElementsCollector.collect(method);
+        float[] commentVector = index.commentVector(commentWordSet);
 
         // For each code element, I want to take the vectors of its identifiers (like words componing the method name)
         // and compute the semantic similarity with the predicate (or the whole comment, we'll see)
 
-        if (codeElements != null && !codeElements.isEmpty()) {
-            if (tfid) freq = TFIDUtils.computeTFIDF(freq, codeElements);
-//            for (CodeElement<?> codeElement : codeElements) {
-            for(SimpleMethodCodeElement codeElement : codeElements){
-//                if (codeElement instanceof MethodCodeElement) {
-                DoubleVector methodVector = getCodeElementVector(db, freq, codeElement);
+        if (candidates != null && !candidates.candidates.isEmpty()) {
+            double[] scores = scoreCandidates(commentVector, candidates);
+            retainMatches(parsedComment, method.getSignature(), tag, candidates.candidates, scores, cacheKey);
+        }
+    }
 
-                if (methodVector != null && commentVector != null) {
-                    double dist = cos.measureDistance(methodVector, commentVector);
-                    distances.put(codeElement, dist);
-                }
-            }
-            retainMatches(parsedComment, method.getSignature(), tag, distances);
+    /**
+     * Scores a parsed comment against N candidates with a single matrix-vector product.
+     *
+     * @param commentVector the vector of the parsed comment, possibly null
+     * @param candidates the candidates, with their packed vectors
+     * @return the cosine distance from every candidate, in the candidates order; NaN where the
+     *     comment or the candidate has no vector, or where the approximate index pruned the candidate
+     */
+    double[] scoreCandidates(float[] commentVector, CodeElementIndex.Group candidates) {
+        double commentNorm = commentVector == null ? 0 : VectorKernel.norm(commentVector);
+        if (candidates.forest != null && commentVector != null) {
+            int[] nearest = candidates.forest.candidates(commentVector, approximateSearch);
+            return candidates.vectors.cosineDistances(commentVector, commentNorm, nearest);
         }
+        return candidates.vectors.cosineDistances(commentVector, commentNorm);
     }
 
+    /**
+     * Scores M tags of a method against N candidates at once.
+     *
+     * @param index the index of the code elements, which builds the comment vectors
+     * @param tags the tags to score
+     * @param method the method the tags belong to
+     * @param candidates the candidates, with their packed vectors
+     * @return the M x N matrix of cosine distances, rows in the tags order and columns in the
+     *     candidates order; NaN where the tag or the candidate has no vector
+     * @throws IOException if the GloVe database couldn't be read
+     */
+    double[][] scoreCandidates(CodeElementIndex index, List<Tag> tags, DocumentedMethod method,
+                               CodeElementIndex.Group candidates) throws IOException {
+        float[][] commentVectors = new float[tags.size()][];
+        for (int i = 0; i != commentVectors.length; i++)
+            commentVectors[i] = index.commentVector(this.parseComment(tags.get(i), method));
+        return candidates.vectors.cosineDistances(commentVectors);
+    }
+
+    /**
+     * Camel case-splits an identifier and lemmatizes its words.
+     *
+     * @param id the identifier
+     * @return the lemmatized words of the identifier
+     */
+    static String[] lemmatizeId(String id) {
+        String[] camelId = IdentifierTokenizer.split(id);
+        String joinedId = String.join(" ", camelId).toLowerCase();
+        int index = 0;
+        for (String lemma : LemmaCache.shared().lemmatize(joinedId)) {
+            if (index == camelId.length) break;
+            if (lemma != null) camelId[index] = lemma;
+            index++;
+        }
+        return camelId;
+    }
 
     /**
-     * Build the vector representing a code element, made by its IDs camel case-splitted
+     * Build the vector representing a code element, made by its IDs camel case-splitted, in a
+     * single pass over the weights of its words.
      *
-     * @param db gloVe database
-     * @param freq TFID map
-     * @param codeElement the code element
-     * @return a {@code DoubleVector} representing the code element vector
+     * @param embeddings the vectors of the tokens
+     * @param weights the weight of every token ID in the code element vectors, as returned by
+     *     {@link #codeElementWeights}; words with weight 0 are skipped
+     * @param tokenIds the token IDs of the lemmatized IDs of the code element, one array per ID
+     * @return the code element vector, null if none of its words is in the database
      * @throws IOException if the database couldn't be read
      */
-    private static DoubleVector getCodeElementVector(GloveRandomAccessReader db, Map<String, Double> freq, SimpleMethodCodeElement codeElement) throws IOException {
-        int index;
-        Set<String> ids = codeElement.getCodeElementIds();
-        DoubleVector codeElementVector = null;
-        for (String id : ids) {
-            String[] camelId = id.split("(?<!^)(?=[A-Z])");
-            String joinedId = String.join(" ", camelId).replaceAll("\\s+", " ").toLowerCase().trim();
-            index = 0;
-            for (CoreLabel lemma : StanfordParser.lemmatize(joinedId)) {
-                if (lemma != null) camelId[index] = lemma.lemma();
-
-                index++;
-            }
-            for (int i = 0; i != camelId.length; i++) {
-                if (!tfid || (tfid && freq.get(camelId[i].toLowerCase()) < 0.5)) {
-                    DoubleVector v = db.get(camelId[i].toLowerCase());
-                    if (stopwordsRemoval && stopwords.contains(camelId[i].toLowerCase())) continue;
-                    if (v != null) {
-                        if (codeElementVector == null) codeElementVector = v;
-                        else codeElementVector = codeElementVector.add(v);
-                    }
-                }
+    float[] getCodeElementVector(TokenEmbeddings embeddings, float[] weights, int[][] tokenIds) throws IOException {
+        float[] codeElementVector = null;
+        for (int[] camelId : tokenIds) {
+            for (int token : camelId) {
+                float weight = weights[token];
+                if (weight != 0) codeElementVector = embeddings.accumulate(token, weight, codeElementVector);
             }
         }
         return codeElementVector;
     }
 
-    private static DoubleVector getCommentVector(Set<String> wordComment, GloveRandomAccessReader db) throws IOException {
-        DoubleVector commentVector = null;
-        Iterator<String> wordIterator = wordComment.iterator();
-        while(wordIterator.hasNext()){
-            String word = wordIterator.next();
-            if(word!=null){
-                DoubleVector v = db.get(word.toLowerCase());
-                if (v != null) {
-                    if (commentVector == null) commentVector = v;
-                    else commentVector = commentVector.add(v);
-                }
-            }
+    /**
+     * @param model the document frequencies of the code element words, null if the aggregation
+     *     doesn't use them
+     * @param tokens the number of tokens of the dictionary to compute the weights of
+     * @return the weight in the code element vectors of every token ID lower than {@code tokens}
+     */
+    float[] codeElementWeights(TFIDFModel model, int tokens) {
+        float[] weights = new float[tokens];
+        for (int token = 0; token != tokens; token++) {
+            if (stopwordsRemoval && isStopword(token)) continue;
+            if (aggregation == Aggregation.BINARY_CUTOFF) weights[token] = model.isCommon(token) ? 0 : 1;
+            else weights[token] = commentWeight(model, token);
         }
-        return commentVector;
+        return weights;
     }
 
-    protected double computeSim(GloveRandomAccessReader db, String commentT, String codeElemT) throws IOException {
-        DoubleVector ctVector = db.get(commentT);
-        DoubleVector cetVector = db.get(codeElemT);
-        CosineDistance cos = new CosineDistance();
-        if(ctVector!=null && cetVector!=null)
-            return (1+cos.measureDistance(ctVector, cetVector))/2;
-
-        return 1;
+    /**
+     * @param model the document frequencies of the code element words, null if the aggregation
+     *     doesn't use them
+     * @param token a token ID
+     * @return the weight of the token in the comment vectors; comments words are never dropped
+     */
+    float commentWeight(TFIDFModel model, int token) {
+        switch (aggregation) {
+            case TFIDF:
+                return (float) model.idf(token);
+            case SIF:
+                return (float) (SIF_SMOOTHING / (SIF_SMOOTHING + model.probability(token)));
+            default:
+                return 1;
+        }
     }
 
-
     /**
-     * Parse the original tag comment according to the configuration parameters.
+     * Parse the original tag comment according to the configuration parameters. The comment is
+     * annotated once, giving both the parts of speech for the POS selection and the lemmas.
      *
      * @param tag the {@code Tag} the comment belongs to
      * @param method the {@code DocumentedMethod} containing the tag
      * @return the parsed comment in form of array of strings (words)
      */
     Set<String> parseComment(Tag tag, DocumentedMethod method) {
-        String comment = "";
-        if (posSelect) comment = POSUtils.findSubjectPredicate(tag.getComment(), method);
-        else comment = tag.getComment();
-        comment = comment.replaceAll("[^A-Za-z0-9! ]", "");
+        List<String> words = new ArrayList<>();
+        for (CommentAnnotator.Token token : CommentAnnotator.shared().annotate(annotatedText(tag))) {
+            if (posSelect && !POSUtils.isSubjectPredicate(token.tag)) continue;
+            String word = wordCharacters(token.lemma != null ? token.lemma : token.word, false);
+            if (!word.isEmpty()) words.add(word);
+        }
 
-        String[] wordComment = comment.split(" ");
-        int index = 0;
-        List<CoreLabel> lemmas = StanfordParser.lemmatize(comment);
-        if (wordComment.length != lemmas.size()) System.out.println("?");
-        for (CoreLabel lemma : lemmas) {
-            if (lemma != null) wordComment[index] = lemma.lemma();
-            index++;
+        return removeStopWords(words.toArray(new String[0]));
+    }
+
+    /**
+     * @return the text of the comment of a tag that is annotated: the whole comment when selecting
+     *     by POS, since tagging needs the context; otherwise only its words
+     */
+    String annotatedText(Tag tag) {
+        if (posSelect) return tag.getComment();
+        return wordCharacters(tag.getComment(), true);
+    }
+
+    /**
+     * Keeps only the ASCII letters and digits and the {@code !} of a text, like
+     * {@code replaceAll("[^A-Za-z0-9!]", "")} but in a single pass, and without allocating when
+     * there's nothing to remove.
+     *
+     * @param text the text to filter
+     * @param keepSpaces true to keep the spaces too
+     * @return the filtered text
+     */
+    static String wordCharacters(String text, boolean keepSpaces) {
+        int i = 0;
+        while (i != text.length() && isWordCharacter(text.charAt(i), keepSpaces)) i++;
+        if (i == text.length()) return text;
+
+        StringBuilder filtered = new StringBuilder(text.length() - 1);
+        filtered.append(text, 0, i);
+        for (i++; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isWordCharacter(c, keepSpaces)) filtered.append(c);
         }
+        return filtered.toString();
+    }
+
+    private static boolean isWordCharacter(char c, boolean keepSpaces) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '!'
+                || keepSpaces && c == ' ';
+    }
 
-        return removeStopWords(wordComment);
+    /** @return true if the token ID is the one of a stopword */
+    boolean isStopword(int token) {
+        return token >= 0 && stopwordIds.get(token);
     }
 
-    static Set<String> removeStopWords(String[] words) {
+    Set<String> removeStopWords(String[] words) {
         // Subject often is not useful at all (usually it's the target). Try removing it
         String simpleClassName = className.substring(className.lastIndexOf(".")+1, className.length()).toLowerCase();
 
         if (stopwordsRemoval) {
             for (int i = 0; i != words.length; i++) {
-                if (words[i].equals(simpleClassName) || stopwords.contains(words[i].toLowerCase()))
+                if (words[i].equals(simpleClassName) || isStopword(TokenDictionary.shared().id(words[i])))
                     words[i] = "";
             }
         }
@@ -283,51 +733,56 @@ public class SemanticMatcher {
      * @param parsedComment the parse tag comment
      * @param methodName name of the method the tag belongs to
      * @param tag the {@code Tag}
-     * @param distances the computed distance, for every possible code element candidate, from the parsed comment
+     * @param candidates the possible code element candidates
+     * @param scores the computed distance (similarity for the conceptual matcher) of every
+     *     candidate from the parsed comment, in the candidates order; NaN for unscored candidates
+     * @param cacheKey the cache key of the match, computed when the cache was looked up; null if
+     *     results aren't cached
      */
-    void retainMatches(String parsedComment, String methodName, Tag tag, Map<SimpleMethodCodeElement, Double> distances){
+    void retainMatches(String parsedComment, String methodName, Tag tag,
+                       List<SimpleMethodCodeElement> candidates, double[] scores, MatchCache.Key cacheKey){
         SemanticMatch aMatch = new SemanticMatch(tag, methodName, parsedComment, distanceThreshold);
 
-        // Select as candidates only code elements that have a semantic distance below the chosen threshold.
-        if(distanceThreshold!=-1) {
-            distances.values().removeIf(new Predicate<Double>() {
-                @Override
-                public boolean test(Double aDouble) {
-                    return aDouble > distanceThreshold;
-                }
-            });
+        // Select as candidates only code elements that have a semantic distance below the chosen threshold,
+        // keeping the best topK of them without sorting all the scores.
+        TopKSelector selector = new TopKSelector(topK, higherIsBetter());
+        for (int i = 0; i != scores.length; i++) {
+            if (distanceThreshold == -1 || scores[i] <= distanceThreshold) selector.offer(i, scores[i]);
         }
+        selector.sort();
 
-        LinkedHashMap<SimpleMethodCodeElement, Double> orderedDistances;
-        if(this instanceof ConceptualMatcher){
-            orderedDistances = distances.entrySet()
-                    .stream()
-                    .sorted(Map.Entry.comparingByValue(Collections.reverseOrder()))
-                    .collect(Collectors.toMap(
-                            Map.Entry::getKey,
-                            Map.Entry::getValue,
-                            (e1, e2) -> e1,
-                            LinkedHashMap::new
-                    ));
-
-        }else
-            orderedDistances = distances.entrySet()
-                    .stream()
-                    .sorted(Map.Entry.comparingByValue())
-                    .collect(Collectors.toMap(
-                            Map.Entry::getKey,
-                            Map.Entry::getValue,
-                            (e1, e2) -> e1,
-                            LinkedHashMap::new
-                    ));
-
+        LinkedHashMap<SimpleMethodCodeElement, Double> orderedDistances = new LinkedHashMap<>();
+        for (int i = 0; i != selector.size(); i++)
+            orderedDistances.put(candidates.get(selector.id(i)), selector.score(i));
         aMatch.setCandidates(orderedDistances);
 
-        if(!aMatch.candidates.isEmpty()) {
-            aMatch.computeCorrectness();
-            aMatch.computePartialCorrectness();
-            semanticMatches.add(aMatch);
+        MatchCache cache = resultCache;
+        if (cache != null && cacheKey != null) cache.put(cacheKey, aMatch);
+
+        if(!aMatch.candidates.isEmpty()) publish(aMatch);
+    }
+
+    /** Counts a match with some candidates, keeps it if asked to, and writes it to the result file. */
+    private void publish(SemanticMatch aMatch) {
+        aMatch.computeCorrectness();
+        aMatch.computePartialCorrectness();
+        if (aMatch.topCandidateIsCorrect) correctMatches.incrementAndGet();
+        else if (aMatch.candidateFound) partiallyCorrectMatches.incrementAndGet();
+        else failedMatches.incrementAndGet();
+        if (keepMatches) semanticMatches.add(aMatch);
+        MatchWriter writer = resultWriter;
+        if (writer != null) {
+            try {
+                writer.write(aMatch);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
     }
 
+    /** @return true if the scores of this matcher are similarities, false if they're distances */
+    boolean higherIsBetter() {
+        return false;
+    }
+
 }
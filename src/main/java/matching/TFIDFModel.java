@@ -0,0 +1,214 @@
+package matching;
+
+import util.CandidateRepository;
+import util.IntCounter;
+import util.SimpleMethodCodeElement;
+import util.TokenDictionary;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Document frequencies of the identifier words over the code elements of a whole project, where
+ * every code element is a document made of the lemmatized words of its identifiers.
+ *
+ * The model is built once, before matching, and only read by the matchers. Classes can be added
+ * at any time, also to a model loaded from disk, and are identified by name: the documents of
+ * every class are kept apart, so a class added again replaces its previous documents, and the
+ * model stays the one of the current code elements. Thread-safe.
+ */
+public class TFIDFModel {
+
+    private static final int MAGIC = 0x54544632; // "TTF2"
+    /** Words appearing in at least this fraction of the documents are too common to be useful. */
+    static final double COMMON_CUTOFF = 0.5;
+
+    /** The documents of a class. */
+    private static class ClassDocuments {
+        /** Number of documents of the class containing every token ID. */
+        final IntCounter documentFrequencies = new IntCounter();
+        int documents;
+        /** Order-independent hash of the documents of the class. */
+        long checksum;
+    }
+
+    private final TokenDictionary dictionary;
+    /** Number of documents containing every token ID. */
+    private final IntCounter documentFrequencies = new IntCounter();
+    private final Map<String, ClassDocuments> classes = new TreeMap<>();
+    private int documents;
+    /** Order-independent hash of all the documents, which identifies the content of the model. */
+    private long checksum;
+
+    public TFIDFModel() {
+        this(TokenDictionary.shared());
+    }
+
+    /** @param dictionary the dictionary giving the token IDs */
+    public TFIDFModel(TokenDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Adds the code elements of a class, each of them once however many methods it's a candidate
+     * of, replacing the ones of a previous add.
+     *
+     * @param className the name of the class
+     * @param codeElements the Java code elements of the class, grouped by method
+     * @return false if the class was already in the model with the same documents, so that the
+     *     model didn't change
+     */
+    public boolean add(String className, CandidateRepository codeElements) {
+        ClassDocuments added = new ClassDocuments();
+        // The same code element is a candidate of many methods, with a different forMethod.
+        Set<String> seen = new HashSet<>();
+        for (String method : codeElements.methods()) {
+            for (SimpleMethodCodeElement codeElement : codeElements.forMethod(method)) {
+                Set<String> ids = codeElement.getCodeElementIds() == null
+                        ? Collections.<String>emptySet()
+                        : new TreeSet<>(codeElement.getCodeElementIds());
+                if (!seen.add(codeElement.getCodeElementName() + '\u0000' + String.join("\u0000", ids))) continue;
+
+                Set<String> words = new TreeSet<>();
+                for (String id : ids)
+                    for (String word : SemanticMatcher.lemmatizeId(id)) words.add(word.toLowerCase());
+                addDocument(added, words);
+            }
+        }
+        synchronized (this) {
+            ClassDocuments previous = classes.get(className);
+            if (previous != null && previous.documents == added.documents && previous.checksum == added.checksum)
+                return false;
+            put(className, added);
+            return true;
+        }
+    }
+
+    /** @param words the distinct lowercased words of a document */
+    private void addDocument(ClassDocuments documents, Collection<String> words) {
+        long hash = 0xcbf29ce484222325L;
+        for (String word : words) {
+            documents.documentFrequencies.add(dictionary.intern(word));
+            for (int i = 0; i != word.length(); i++) hash = (hash ^ word.charAt(i)) * 0x100000001b3L;
+            hash = (hash ^ ' ') * 0x100000001b3L;
+        }
+        documents.checksum += hash;
+        documents.documents++;
+    }
+
+    /** Adds the documents of a class to the totals, replacing the previous ones of the class. */
+    private void put(String className, ClassDocuments added) {
+        ClassDocuments previous = classes.put(className, added);
+        if (previous != null) {
+            for (int token : previous.documentFrequencies.keys())
+                documentFrequencies.add(token, -previous.documentFrequencies.get(token));
+            documents -= previous.documents;
+            checksum -= previous.checksum;
+        }
+        for (int token : added.documentFrequencies.keys())
+            documentFrequencies.add(token, added.documentFrequencies.get(token));
+        documents += added.documents;
+        checksum += added.checksum;
+    }
+
+    /** @return the number of documents, i.e. of code elements */
+    public synchronized int documents() {
+        return documents;
+    }
+
+    /**
+     * @param token a token ID
+     * @return the number of documents containing the token
+     */
+    public synchronized int documentFrequency(int token) {
+        return documentFrequencies.get(token);
+    }
+
+    /**
+     * @param token a token ID
+     * @return the smoothed inverse document frequency of the token, {@code ln((1 + N) / (1 + df)) + 1}
+     */
+    public synchronized double idf(int token) {
+        return Math.log((1.0 + documents) / (1.0 + documentFrequencies.get(token))) + 1;
+    }
+
+    /**
+     * @param token a token ID
+     * @return the probability of the token among the words of all the documents, counting every
+     *     word once per document
+     */
+    public synchronized double probability(int token) {
+        long total = documentFrequencies.total();
+        return total == 0 ? 0 : (double) documentFrequencies.get(token) / total;
+    }
+
+    /**
+     * @param token a token ID
+     * @return true if the token appears in at least {@link #COMMON_CUTOFF} of the documents
+     */
+    public synchronized boolean isCommon(int token) {
+        return documents > 0 && documentFrequencies.get(token) >= COMMON_CUTOFF * documents;
+    }
+
+    /** @return a short string identifying the content of the model, for the match cache keys */
+    public synchronized String fingerprint() {
+        return documents + ":" + Long.toHexString(checksum);
+    }
+
+    /**
+     * Saves the model.
+     *
+     * @param file the file to write, replaced if it exists
+     * @throws IOException if the file couldn't be written
+     */
+    public synchronized void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(classes.size());
+            for (Map.Entry<String, ClassDocuments> entry : classes.entrySet()) {
+                ClassDocuments classDocuments = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(classDocuments.documents);
+                out.writeLong(classDocuments.checksum);
+                // Token IDs are only valid within a process: tokens are saved by text.
+                int[] tokens = classDocuments.documentFrequencies.keys();
+                out.writeInt(tokens.length);
+                for (int token : tokens) {
+                    out.writeUTF(dictionary.token(token));
+                    out.writeInt(classDocuments.documentFrequencies.get(token));
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the classes of a saved model, if it exists, to this one, which is usually still empty.
+     * Classes already in this model are replaced by the saved ones.
+     *
+     * @param file the file written by {@link #save(Path)}
+     * @throws IOException if the file couldn't be read or is not a TF-IDF model
+     */
+    public synchronized void load(Path file) throws IOException {
+        if (!Files.exists(file)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC) throw new IOException(file + " is not a TF-IDF model");
+            int savedClasses = in.readInt();
+            for (int c = 0; c != savedClasses; c++) {
+                String className = in.readUTF();
+                ClassDocuments saved = new ClassDocuments();
+                saved.documents = in.readInt();
+                saved.checksum = in.readLong();
+                int tokens = in.readInt();
+                for (int i = 0; i != tokens; i++)
+                    saved.documentFrequencies.add(dictionary.intern(in.readUTF()), in.readInt());
+                put(className, saved);
+            }
+        }
+    }
+}
@@ -1,88 +1,86 @@
 package matching;
 
-import com.crtomirmajer.wmd4j.WordMovers;
-import edu.stanford.nlp.ling.CoreLabel;
-import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
-import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+import de.jungblut.glove.GloveRandomAccessReader;
 import org.toradocu.extractor.DocumentedMethod;
 import org.toradocu.extractor.Tag;
-import org.toradocu.translator.StanfordParser;
-import util.OutputUtil;
+import util.CandidateRepository;
+import util.IdentifierTokenizer;
 import util.SimpleMethodCodeElement;
+import util.WordMoversEngine;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by arianna on 10/07/17.
  */
 public class WMDMatcher extends SemanticMatcher {
+
+    /** Distance of the comments or code elements having no word in the vectors vocabulary. */
+    static final double MISSING_DISTANCE = 10;
+
+    private WordMoversEngine engine;
+    /** The WMD document of every code element, built the first time it's a candidate. */
+    private final Map<SimpleMethodCodeElement, WordMoversEngine.Document> documents = new ConcurrentHashMap<>();
+
     WMDMatcher(String className, boolean stopwordsRemoval, boolean posSelect, boolean tfid, float distanceThreshold) {
         super(className, stopwordsRemoval, posSelect, tfid, distanceThreshold);
     }
 
-    void runWmdMatch(File goalFile, Set<SimpleMethodCodeElement> codeElements, WordVectors vectors){
-        Set<DocumentedMethod> methods = this.readMethodsFromJson(goalFile);
-
-        WordMovers wm = WordMovers.Builder().wordVectors(vectors).build();
-
-        for(DocumentedMethod m : methods){
-            HashSet<SimpleMethodCodeElement> referredCodeElements = codeElements
-                    .stream()
-                    .filter(forMethod -> forMethod.getForMethod().equals(m.getSignature()))
-                    .collect(Collectors.toCollection(HashSet::new));
+    /**
+     * Runs the WMD match on the same GloVe database of the other matchers.
+     *
+     * @param db gloVe database
+     * @param goalFile the class goal file
+     * @param codeElements the Java code elements for the translation, grouped by method
+     */
+    void runWmdMatch(GloveRandomAccessReader db, File goalFile, CandidateRepository codeElements){
+        documents.clear();
+        engine = new WordMoversEngine(threadSafe(db));
 
-            if(m.returnTag() != null){
-                String condition = m.returnTag().getCondition().get();
-                if(!condition.equals("")) {
-                    wmdMatch(wm, m.returnTag(), m, referredCodeElements);
-                }
-            }
-            if(!m.throwsTags().isEmpty()){
-                for(Tag throwTag : m.throwsTags()){
-                    String condition = throwTag.getCondition().get();
-                    if(!condition.equals("")) {
-                        wmdMatch(wm, throwTag, m, referredCodeElements);
-                    }
-                }
-            }
-        }
         try {
-            OutputUtil.exportTojson(true, false);
+            CodeElementIndex index = new CodeElementIndex(this, null, codeElements);
+            run(goalFile, codeElements, true, false,
+                    (tag, method, referredCodeElements, cacheKey) ->
+                            wmdMatch(tag, method, index.group(method.getSignature()), index, cacheKey));
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private void wmdMatch(WordMovers wm, Tag tag, DocumentedMethod method, Set<SimpleMethodCodeElement> codeElements){
-        Map<SimpleMethodCodeElement, Double> distances = new HashMap<SimpleMethodCodeElement, Double>();
+    private void wmdMatch(Tag tag, DocumentedMethod method, CodeElementIndex.Group candidates,
+                          CodeElementIndex index, MatchCache.Key cacheKey) throws IOException {
         Set<String> commentWordSet = super.parseComment(tag, method);
-        String parsedComment = String.join(" ", commentWordSet).replaceAll("\\s+", " ").trim();
-        if (codeElements != null && !codeElements.isEmpty()) {
-            for(SimpleMethodCodeElement codeElement : codeElements){
-                Set<String> ids = codeElement.getCodeElementIds();
-                for (String id : ids) {
-                    String[] camelId = id.split("(?<!^)(?=[A-Z])");
-                    String joinedId = String.join(" ", camelId).replaceAll("\\s+", " ").trim().toLowerCase();
-                    int index = 0;
-                    for (CoreLabel lemma : StanfordParser.lemmatize(joinedId)) {
-                        if (lemma != null) camelId[index] = lemma.lemma();
-                        index++;
-                    }
-                    Set<String> codeElementWordSet = removeStopWords(camelId);
-                    joinedId = String.join(" ", codeElementWordSet).replaceAll("\\s+", " ").trim().toLowerCase();
-                    double dist = 10;
-                    try{
-                        dist = wm.distance(parsedComment, joinedId);
-                    }catch(NoSuchElementException e){
-                        //do nothing
-                    }
-                    distances.put(codeElement, dist);
-                }
-            }
+        String parsedComment = IdentifierTokenizer.joinWords(commentWordSet);
+        if (candidates != null && !candidates.candidates.isEmpty()) {
+            WordMoversEngine.Document comment = engine.document(parsedComment);
+            WordMoversEngine.Document[] candidateDocuments = new WordMoversEngine.Document[candidates.candidates.size()];
+            for (int i = 0; i != candidateDocuments.length; i++)
+                candidateDocuments[i] = document(candidates.candidates.get(i), index);
+
+            double maxDistance = distanceThreshold == -1 ? Double.POSITIVE_INFINITY : distanceThreshold;
+            double[] distances = engine.distances(comment, candidateDocuments, topK(), maxDistance, MISSING_DISTANCE);
+            retainMatches(parsedComment, method.getSignature(), tag, candidates.candidates, distances, cacheKey);
+        }
+    }
+
+    /**
+     * The distance of a code element is the one of its last identifier, so that's the only one
+     * that is scored.
+     *
+     * @return the document of the code element, null if it has no identifiers
+     */
+    private WordMoversEngine.Document document(SimpleMethodCodeElement codeElement, CodeElementIndex index)
+            throws IOException {
+        WordMoversEngine.Document document = documents.get(codeElement);
+        if (document == null) {
+            List<String> ids = index.get(codeElement).documents;
+            if (ids.isEmpty()) return null;
+            document = engine.document(ids.get(ids.size() - 1));
+            documents.put(codeElement, document);
         }
-        retainMatches(parsedComment, method.getSignature(), tag, distances);
+        return document;
     }
 }
@@ -1,14 +0,0 @@
-package util;
-
-/**
- * Created by arianna on 07/07/17.
- */
-public class AlignmentScore {
-    public String x;
-    public double score;
-
-    public AlignmentScore(String x, double score) {
-        this.x = x;
-        this.score = score;
-    }
-}
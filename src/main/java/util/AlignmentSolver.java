@@ -0,0 +1,85 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Optimal one-to-one alignment of the words of two sentences, given their word-by-word
+ * similarity matrix (Hungarian algorithm, O(n^2 m) on primitive arrays).
+ */
+public final class AlignmentSolver {
+
+    private AlignmentSolver() {}
+
+    /**
+     * Aligns every row to at most one column and vice versa, maximizing the total similarity.
+     *
+     * @param similarities the similarity matrix, row-major
+     * @param rows the number of rows of the matrix
+     * @param cols the number of columns of the matrix
+     * @return the sum of the similarities of the aligned pairs
+     */
+    public static double maxAlignment(double[] similarities, int rows, int cols) {
+        if (rows == 0 || cols == 0) return 0;
+        // The algorithm needs at least as many columns as rows: otherwise work on the transpose.
+        boolean transpose = rows > cols;
+        int n = transpose ? cols : rows;
+        int m = transpose ? rows : cols;
+
+        // Potentials and matching are 1-based, index 0 is the fictitious starting column.
+        double[] u = new double[n + 1];
+        double[] v = new double[m + 1];
+        int[] p = new int[m + 1];
+        int[] way = new int[m + 1];
+        double[] minv = new double[m + 1];
+        boolean[] used = new boolean[m + 1];
+
+        for (int i = 1; i <= n; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                int j1 = 0;
+                double delta = Double.POSITIVE_INFINITY;
+                for (int j = 1; j <= m; j++) {
+                    if (used[j]) continue;
+                    // Maximizing the similarity means minimizing its opposite.
+                    double cur = -similarity(similarities, cols, transpose, i0 - 1, j - 1) - u[i0] - v[j];
+                    if (cur < minv[j]) {
+                        minv[j] = cur;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= m; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        double total = 0;
+        for (int j = 1; j <= m; j++)
+            if (p[j] != 0) total += similarity(similarities, cols, transpose, p[j] - 1, j - 1);
+        return total;
+    }
+
+    private static double similarity(double[] similarities, int cols, boolean transpose, int i, int j) {
+        return transpose ? similarities[j * cols + i] : similarities[i * cols + j];
+    }
+}
@@ -0,0 +1,111 @@
+package util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, thread-safe memo of expensive results, such as the output of CoreNLP, counting how many
+ * lookups found their result.
+ *
+ * When the cache is full a tenth of the entries, in no particular order, is dropped to make room:
+ * cheaper than a strict LRU, and good enough for results that are all about as likely to be asked
+ * for again.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached results
+ */
+public class BoundedCache<K, V> {
+
+    private final int capacity;
+    private final Map<K, V> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /** @param capacity the maximum number of entries */
+    public BoundedCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive, was " + capacity);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Looks up a result, counting a hit or a miss.
+     *
+     * @param key the key of the result
+     * @return the cached result, null if there's none
+     */
+    public V get(K key) {
+        V value = entries.get(key);
+        if (value != null) hits.incrementAndGet();
+        else misses.incrementAndGet();
+        return value;
+    }
+
+    /** @return true if a result is cached for the key; not counted as a hit nor as a miss */
+    public boolean containsKey(K key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Stores a result, dropping a tenth of the entries first if the cache is full.
+     *
+     * @param key the key of the result
+     * @param value the result
+     */
+    public void put(K key, V value) {
+        if (entries.size() >= capacity && !entries.containsKey(key)) evict();
+        entries.put(key, value);
+    }
+
+    /**
+     * Stores a result only if the key has none and the cache is not full, without evicting
+     * anything, as when reloading a snapshot.
+     *
+     * @param key the key of the result
+     * @param value the result
+     * @return false if the cache is full
+     */
+    public boolean putIfRoom(K key, V value) {
+        if (entries.size() >= capacity) return false;
+        entries.putIfAbsent(key, value);
+        return true;
+    }
+
+    private void evict() {
+        int toRemove = Math.max(1, capacity / 10);
+        Iterator<K> keys = entries.keySet().iterator();
+        while (toRemove-- > 0 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    /** @return a copy of the entries */
+    public Map<K, V> snapshot() {
+        return new HashMap<>(entries);
+    }
+
+    /** @return the number of lookups that found their result */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** @return the number of lookups that didn't find their result */
+    public long misses() {
+        return misses.get();
+    }
+
+    /** @return the number of cached results */
+    public int size() {
+        return entries.size();
+    }
+
+    /** Drops all the entries and resets the counts. */
+    public void clear() {
+        entries.clear();
+        hits.set(0);
+        misses.set(0);
+    }
+}
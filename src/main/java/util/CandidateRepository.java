@@ -0,0 +1,97 @@
+package util;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The code elements of a class, grouped by the signature of the method they can be used for.
+ *
+ * Code elements are grouped as they're added, so the candidates of a method are retrieved in
+ * constant time instead of filtering the whole set of code elements for every method.
+ */
+public class CandidateRepository {
+
+    private final Map<String, Set<SimpleMethodCodeElement>> byMethod = new ConcurrentHashMap<>();
+
+    public CandidateRepository() {}
+
+    public CandidateRepository(Collection<SimpleMethodCodeElement> codeElements) {
+        for (SimpleMethodCodeElement codeElement : codeElements) add(codeElement);
+    }
+
+    /**
+     * Loads the code elements stored in a JSON file (one object after the other, not an array),
+     * adding every object to the repository as soon as it's read.
+     *
+     * @param codeElementsFile the JSON file
+     * @return the repository of the code elements
+     * @throws IOException if the file couldn't be read
+     */
+    public static CandidateRepository load(File codeElementsFile) throws IOException {
+        CandidateRepository codeElements = new CandidateRepository();
+        Gson gson = new Gson();
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(codeElementsFile.toPath()))) {
+            // Lenient readers accept several top-level values.
+            reader.setLenient(true);
+            while (reader.peek() != JsonToken.END_DOCUMENT)
+                codeElements.add(gson.fromJson(reader, SimpleMethodCodeElement.class));
+        }
+        return codeElements;
+    }
+
+    /**
+     * @param codeElement the code element to add
+     * @return true if the code element wasn't already in the repository
+     */
+    public boolean add(SimpleMethodCodeElement codeElement) {
+        boolean[] added = new boolean[1];
+        byMethod.compute(codeElement.getForMethod(), (method, candidates) -> {
+            if (candidates == null) candidates = ConcurrentHashMap.newKeySet();
+            added[0] = candidates.add(codeElement);
+            return candidates;
+        });
+        return added[0];
+    }
+
+    /**
+     * @param codeElement the code element to remove
+     * @return true if the code element was in the repository
+     */
+    public boolean remove(SimpleMethodCodeElement codeElement) {
+        boolean[] removed = new boolean[1];
+        byMethod.computeIfPresent(codeElement.getForMethod(), (method, candidates) -> {
+            removed[0] = candidates.remove(codeElement);
+            return candidates.isEmpty() ? null : candidates;
+        });
+        return removed[0];
+    }
+
+    /**
+     * @param signature the signature of a method
+     * @return the code elements that can be used in the translations of the method comments,
+     *     an empty set if there's none
+     */
+    public Set<SimpleMethodCodeElement> forMethod(String signature) {
+        Set<SimpleMethodCodeElement> candidates = byMethod.get(signature);
+        return candidates == null ? Collections.emptySet() : Collections.unmodifiableSet(candidates);
+    }
+
+    /** @return the signatures of the methods having at least one candidate */
+    public Set<String> methods() {
+        return Collections.unmodifiableSet(byMethod.keySet());
+    }
+
+    /** @return the number of code elements in the repository */
+    public int size() {
+        int size = 0;
+        for (Set<SimpleMethodCodeElement> candidates : byMethod.values()) size += candidates.size();
+        return size;
+    }
+}
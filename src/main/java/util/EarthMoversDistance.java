@@ -0,0 +1,102 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Exact Earth Mover's Distance between two discrete distributions (successive shortest paths on
+ * the transportation network, with Dijkstra on reduced costs). Meant for the small distributions
+ * of the Word Mover's Distance, where a dense O(V^2) Dijkstra is the fastest option.
+ */
+public final class EarthMoversDistance {
+
+    /** Masses below this are considered already moved, to absorb rounding errors. */
+    private static final double EPSILON = 1e-12;
+
+    private EarthMoversDistance() {}
+
+    /**
+     * @param supply the mass of every source, summing to the same total of the demand
+     * @param demand the mass of every destination
+     * @param cost the non-negative cost of moving a unit of mass from every source (rows) to
+     *     every destination (columns), row-major
+     * @return the minimum cost of moving all the mass
+     */
+    public static double distance(double[] supply, double[] demand, double[] cost) {
+        int n = supply.length;
+        int m = demand.length;
+        if (n == 0 || m == 0) return 0;
+
+        // Nodes: 0 is the source, 1..n the supplies, n+1..n+m the demands, n+m+1 the sink.
+        int nodes = n + m + 2;
+        int sink = nodes - 1;
+        double[] residualSupply = supply.clone();
+        double[] residualDemand = demand.clone();
+        double[] flow = new double[n * m];
+        double[] potential = new double[nodes];
+        double[] distance = new double[nodes];
+        int[] previous = new int[nodes];
+        boolean[] done = new boolean[nodes];
+
+        while (true) {
+            Arrays.fill(distance, Double.POSITIVE_INFINITY);
+            Arrays.fill(done, false);
+            distance[0] = 0;
+            previous[0] = -1;
+            for (int step = 0; step != nodes; step++) {
+                int u = -1;
+                for (int v = 0; v != nodes; v++)
+                    if (!done[v] && (u == -1 || distance[v] < distance[u])) u = v;
+                if (u == -1 || distance[u] == Double.POSITIVE_INFINITY) break;
+                done[u] = true;
+                if (u == sink) continue;
+
+                if (u == 0) {
+                    for (int i = 0; i != n; i++)
+                        if (residualSupply[i] > EPSILON) relax(u, 1 + i, 0, potential, distance, previous);
+                } else if (u <= n) {
+                    int i = u - 1;
+                    for (int j = 0; j != m; j++) relax(u, 1 + n + j, cost[i * m + j], potential, distance, previous);
+                    // Mass can be sent back to the source only to be rerouted: never shorter.
+                } else {
+                    int j = u - 1 - n;
+                    if (residualDemand[j] > EPSILON) relax(u, sink, 0, potential, distance, previous);
+                    for (int i = 0; i != n; i++)
+                        if (flow[i * m + j] > EPSILON) relax(u, 1 + i, -cost[i * m + j], potential, distance, previous);
+                }
+            }
+            if (distance[sink] == Double.POSITIVE_INFINITY) break;
+
+            for (int v = 0; v != nodes; v++)
+                if (distance[v] != Double.POSITIVE_INFINITY) potential[v] += distance[v];
+
+            // The bottleneck of the path: supply, demand, or flow being pushed back.
+            double mass = Double.POSITIVE_INFINITY;
+            for (int v = sink; previous[v] != -1; v = previous[v]) {
+                int u = previous[v];
+                if (u == 0) mass = Math.min(mass, residualSupply[v - 1]);
+                else if (v == sink) mass = Math.min(mass, residualDemand[u - 1 - n]);
+                else if (u > n) mass = Math.min(mass, flow[(v - 1) * m + (u - 1 - n)]);
+            }
+            for (int v = sink; previous[v] != -1; v = previous[v]) {
+                int u = previous[v];
+                if (u == 0) residualSupply[v - 1] -= mass;
+                else if (v == sink) residualDemand[u - 1 - n] -= mass;
+                else if (u <= n) flow[(u - 1) * m + (v - 1 - n)] += mass;
+                else flow[(v - 1) * m + (u - 1 - n)] -= mass;
+            }
+        }
+
+        double total = 0;
+        for (int k = 0; k != flow.length; k++) total += flow[k] * cost[k];
+        return total;
+    }
+
+    private static void relax(int u, int v, double cost, double[] potential, double[] distance, int[] previous) {
+        // Reduced costs are non-negative up to rounding errors.
+        double candidate = distance[u] + Math.max(0, cost + potential[u] - potential[v]);
+        if (candidate < distance[v]) {
+            distance[v] = candidate;
+            previous[v] = u;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package util;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import org.toradocu.extractor.DocumentedMethod;
+import org.toradocu.util.GsonInstance;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the {@code DocumentedMethod}s of a goal file one at a time, so that they can be matched
+ * as they are read instead of holding the whole file in memory.
+ */
+public class GoalFileReader implements Iterator<DocumentedMethod>, Closeable {
+
+    private final Gson gson = GsonInstance.gson();
+    private final JsonReader reader;
+    private boolean open;
+
+    /**
+     * @param goalFile the goal file, a JSON array of {@code DocumentedMethod}s
+     * @throws IOException if the file couldn't be opened or doesn't contain an array
+     */
+    public GoalFileReader(File goalFile) throws IOException {
+        reader = new JsonReader(Files.newBufferedReader(goalFile.toPath()));
+        try {
+            reader.beginArray();
+        } catch (IllegalStateException e) {
+            reader.close();
+            throw new IOException(goalFile + " is not a goal file: " + e.getMessage(), e);
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        open = true;
+    }
+
+    /**
+     * @throws UncheckedIOException if the goal file couldn't be read
+     */
+    @Override
+    public boolean hasNext() {
+        if (!open) return false;
+        try {
+            if (reader.hasNext()) return true;
+            reader.endArray();
+            open = false;
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @throws UncheckedIOException if the goal file couldn't be read
+     */
+    @Override
+    public DocumentedMethod next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return gson.fromJson(reader, DocumentedMethod.class);
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        reader.close();
+    }
+}
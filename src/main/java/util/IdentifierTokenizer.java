@@ -0,0 +1,171 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Splits Java identifiers into words in a single pass over their characters, without regular
+ * expressions: {@code getURL2Path} becomes {@code get}, {@code URL}, {@code 2}, {@code Path}.
+ *
+ * A word ends where lowercase letters are followed by an uppercase one, where an uppercase run is
+ * followed by a lowercase letter (the last uppercase letter starts the next word), and where
+ * letters meet digits. A lone {@code s} after an uppercase run is its plural and stays in the run:
+ * {@code getIDs} becomes {@code get}, {@code IDs}. Characters that are neither letters nor digits, like {@code _} and
+ * {@code $}, only separate words. The bounds of the words of the last identifier are kept in a
+ * reusable buffer, so an instance must not be shared among threads; {@link #split(String)} uses
+ * one instance per thread.
+ */
+public final class IdentifierTokenizer {
+
+    private static final int OTHER = 0, UPPER = 1, LOWER = 2, DIGIT = 3;
+
+    private static final ThreadLocal<IdentifierTokenizer> PER_THREAD =
+            ThreadLocal.withInitial(IdentifierTokenizer::new);
+
+    private CharSequence text;
+    /** Start and end of every token, in pairs. */
+    private int[] bounds = new int[16];
+    private int size;
+
+    /**
+     * @param id the identifier to split
+     * @return the words of the identifier
+     */
+    public static String[] split(String id) {
+        IdentifierTokenizer tokenizer = PER_THREAD.get();
+        tokenizer.tokenize(id);
+        String[] tokens = tokenizer.tokens();
+        tokenizer.text = null;
+        return tokens;
+    }
+
+    /**
+     * Splits an identifier, replacing the tokens of the previous one.
+     *
+     * @param id the identifier to split
+     * @return the number of tokens
+     */
+    public int tokenize(CharSequence id) {
+        text = id;
+        size = 0;
+        int start = -1;
+        int previous = OTHER;
+        for (int i = 0; i != id.length(); i++) {
+            int current = kind(id.charAt(i));
+            if (current == OTHER) {
+                if (start != -1) add(start, i);
+                start = -1;
+            } else if (start == -1) {
+                start = i;
+            } else if (current != previous) {
+                if (previous == UPPER && current == LOWER) {
+                    // URLPath: the uppercase run is an acronym but its last letter starts a word.
+                    // URLs: unless the lowercase letter is a plural s.
+                    if (i - 1 > start && !isPlural(id, i)) {
+                        add(start, i - 1);
+                        start = i - 1;
+                    }
+                } else {
+                    add(start, i);
+                    start = i;
+                }
+            }
+            previous = current;
+        }
+        if (start != -1) add(start, id.length());
+        return size;
+    }
+
+    /** @return true if the character at the index is an s ending a word */
+    private static boolean isPlural(CharSequence id, int i) {
+        return id.charAt(i) == 's' && (i + 1 == id.length() || kind(id.charAt(i + 1)) != LOWER);
+    }
+
+    private static int kind(char c) {
+        if (Character.isDigit(c)) return DIGIT;
+        if (!Character.isLetter(c)) return OTHER;
+        return Character.isUpperCase(c) || Character.isTitleCase(c) ? UPPER : LOWER;
+    }
+
+    private void add(int start, int end) {
+        if (2 * size == bounds.length) bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        bounds[2 * size] = start;
+        bounds[2 * size + 1] = end;
+        size++;
+    }
+
+    /** @return the number of tokens of the last identifier */
+    public int size() {
+        return size;
+    }
+
+    /** @return the index of the first character of a token in the last identifier */
+    public int start(int token) {
+        return bounds[2 * token];
+    }
+
+    /** @return the index after the last character of a token in the last identifier */
+    public int end(int token) {
+        return bounds[2 * token + 1];
+    }
+
+    /** @return a token of the last identifier */
+    public String token(int token) {
+        return text.subSequence(start(token), end(token)).toString();
+    }
+
+    /** @return the tokens of the last identifier */
+    public String[] tokens() {
+        String[] tokens = new String[size];
+        for (int i = 0; i != size; i++) tokens[i] = token(i);
+        return tokens;
+    }
+
+    /**
+     * Joins words with single spaces; the same as joining them and then collapsing and trimming
+     * the whitespace.
+     *
+     * @param words the words to join
+     * @return the joined words
+     */
+    public static String joinWords(Iterable<? extends CharSequence> words) {
+        return collapseWhitespace(String.join(" ", words));
+    }
+
+    /**
+     * Replaces every run of whitespace with a single space and trims the text, like
+     * {@code text.replaceAll("\\s+", " ").trim()}, but without allocating if the text is already
+     * normalized.
+     *
+     * @param text the text to normalize
+     * @return the normalized text
+     */
+    public static String collapseWhitespace(String text) {
+        int i = 0;
+        for (; i != text.length(); i++) {
+            char c = text.charAt(i);
+            if (isWhitespace(c) && (c != ' ' || i + 1 < text.length() && isWhitespace(text.charAt(i + 1))))
+                break;
+        }
+        if (i == text.length()) return text.trim();
+
+        StringBuilder collapsed = new StringBuilder(text.length());
+        collapsed.append(text, 0, i);
+        boolean inWhitespace = false;
+        for (; i != text.length(); i++) {
+            char c = text.charAt(i);
+            if (isWhitespace(c)) {
+                if (!inWhitespace) collapsed.append(' ');
+                inWhitespace = true;
+            } else {
+                collapsed.append(c);
+                inWhitespace = false;
+            }
+        }
+        return collapsed.toString().trim();
+    }
+
+    /** @return true for the characters matched by {@code \s} */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,106 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Counts occurrences of int keys, such as token IDs, without boxing: keys and counts are stored
+ * in two parallel arrays, with open addressing and linear probing. Not thread-safe.
+ */
+public class IntCounter {
+
+    private static final int FREE = -1;
+
+    private int[] keys;
+    private int[] counts;
+    private int size;
+    private long total;
+
+    public IntCounter() {
+        this(16);
+    }
+
+    /** @param expectedKeys the number of distinct keys expected, to size the table */
+    public IntCounter(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedKeys * 2 - 1)) << 1;
+        keys = new int[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    /**
+     * @param key a non-negative key
+     * @return the count of the key after the increment
+     */
+    public int add(int key) {
+        return add(key, 1);
+    }
+
+    /**
+     * @param key a non-negative key
+     * @param count the number of occurrences to add
+     * @return the count of the key after the increment
+     */
+    public int add(int key, int count) {
+        if (key < 0) throw new IllegalArgumentException("Keys must not be negative, was " + key);
+        int slot = slot(key);
+        if (keys[slot] == FREE) {
+            if (2 * (size + 1) > keys.length) {
+                grow();
+                slot = slot(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        total += count;
+        return counts[slot] += count;
+    }
+
+    /** @return the count of the key, 0 if it was never added */
+    public int get(int key) {
+        if (key < 0) return 0;
+        int slot = slot(key);
+        return keys[slot] == FREE ? 0 : counts[slot];
+    }
+
+    /** @return the number of distinct keys */
+    public int size() {
+        return size;
+    }
+
+    /** @return the sum of all the counts */
+    public long total() {
+        return total;
+    }
+
+    /** @return the distinct keys, in no particular order */
+    public int[] keys() {
+        int[] result = new int[size];
+        int i = 0;
+        for (int key : keys)
+            if (key != FREE) result[i++] = key;
+        return result;
+    }
+
+    /** @return the slot of the key, or the free slot where it would go */
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int hash = key * 0x9E3779B9;
+        int slot = (hash ^ hash >>> 16) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        Arrays.fill(keys, FREE);
+        for (int i = 0; i != oldKeys.length; i++) {
+            if (oldKeys[i] == FREE) continue;
+            int slot = slot(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package util;
+
+import de.jungblut.glove.GloveRandomAccessReader;
+import de.jungblut.math.DoubleVector;
+import de.jungblut.math.dense.DenseDoubleVector;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Embedding store that memory-maps a contiguous float matrix, one row per word, plus a vocabulary
+ * index mapping every word to its row.
+ *
+ * Unlike {@code GloveBinaryRandomAccessReader} no seek or read is done per lookup: rows are served
+ * straight from the page cache, either as zero-copy {@code FloatBuffer} views ({@link #row(int)})
+ * or, to honour the {@code GloveRandomAccessReader} contract, as a {@code DoubleVector} copy.
+ * The store is read-only and can be shared among threads.
+ *
+ * File layout, version 2 (big endian): a header (magic, version, dimension, vocabulary size,
+ * encoding, hash table slots, then the offsets of the sections as longs); every word as a length
+ * and its UTF-8 bytes, in row order; an open addressing hash table of the words, every slot
+ * holding row + 1 (0 for empty slots) and the offset of the word; for int8 stores the scale of
+ * every row; and finally the matrix. Every section starts on a 4 bytes boundary. Nothing is read
+ * when the store is opened, the vocabulary included: lookups probe the mapped hash table.
+ *
+ * Version 1 stores (magic, version, dimension, vocabulary size, the words, then the float
+ * matrix) can still be opened; their vocabulary is loaded on the heap.
+ */
+public class MappedGloveStore implements GloveRandomAccessReader {
+
+    static final int MAGIC = 0x474c5653; // "GLVS"
+    static final int VERSION = 2;
+    private static final int HEADER_BYTES = 56;
+
+    /** How the matrix is stored. */
+    public enum Encoding {
+        /** The original float vectors. */
+        FLOAT32,
+        /** Every component as a byte, times a per-row scale: 4 times smaller, slightly lossy. */
+        INT8
+    }
+
+    /** Rows are mapped in chunks, since a single mapping can't exceed 2GB. */
+    private static final long MAX_CHUNK_BYTES = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final int dimension;
+    private final int size;
+    private final Encoding encoding;
+    /** Version 1 vocabulary, null for version 2 stores. */
+    private final Map<String, Integer> vocabulary;
+    /** Version 2 words, hash table and scales. */
+    private final ByteBuffer index;
+    private final int wordsOffset;
+    private final int tableOffset;
+    private final int tableMask;
+    private final FloatBuffer scales;
+    /** The matrix, float chunks for float32 stores and byte chunks for int8 ones. */
+    private final FloatBuffer[] chunks;
+    private final ByteBuffer[] byteChunks;
+    private final int rowsPerChunk;
+
+    /**
+     * Opens and maps a store previously written by {@link #convert(Path, Path)}.
+     *
+     * @param storeFile the store file
+     * @throws IOException if the file couldn't be read or is not a valid store
+     */
+    public MappedGloveStore(Path storeFile) throws IOException {
+        channel = FileChannel.open(storeFile, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) == -1) break;
+            }
+            header.flip();
+            if (header.remaining() < 16 || header.getInt(0) != MAGIC)
+                throw new IOException("Not an embedding store: " + storeFile);
+            int version = header.getInt(4);
+            dimension = header.getInt(8);
+            size = header.getInt(12);
+            long matrixOffset;
+            if (version == 1) {
+                encoding = Encoding.FLOAT32;
+                vocabulary = readVocabulary(storeFile, size);
+                index = null;
+                wordsOffset = tableOffset = tableMask = 0;
+                scales = null;
+                // The matrix fills the end of the file.
+                matrixOffset = channel.size() - (long) size * dimension * Float.BYTES;
+            } else if (version == VERSION) {
+                if (header.remaining() < HEADER_BYTES)
+                    throw new IOException("Truncated embedding store: " + storeFile);
+                encoding = Encoding.values()[header.getInt(16)];
+                tableMask = header.getInt(20) - 1;
+                wordsOffset = (int) header.getLong(24);
+                tableOffset = (int) header.getLong(32);
+                long scalesOffset = header.getLong(40);
+                matrixOffset = header.getLong(48);
+                if (matrixOffset > Integer.MAX_VALUE)
+                    throw new IOException("Vocabulary too large to be mapped: " + storeFile);
+                vocabulary = null;
+                index = channel.map(FileChannel.MapMode.READ_ONLY, 0, matrixOffset);
+                scales = encoding == Encoding.INT8
+                        ? slice(index, (int) scalesOffset, size * Float.BYTES).asFloatBuffer()
+                        : null;
+            } else {
+                throw new IOException("Unsupported embedding store version " + version);
+            }
+
+            long rowBytes = (long) dimension * (encoding == Encoding.INT8 ? 1 : Float.BYTES);
+            rowsPerChunk = (int) Math.max(1, MAX_CHUNK_BYTES / Math.max(rowBytes, 1));
+            int chunkCount = (size + rowsPerChunk - 1) / rowsPerChunk;
+            chunks = encoding == Encoding.FLOAT32 ? new FloatBuffer[chunkCount] : null;
+            byteChunks = encoding == Encoding.INT8 ? new ByteBuffer[chunkCount] : null;
+            for (int c = 0; c < chunkCount; c++) {
+                int chunkRows = Math.min(rowsPerChunk, size - c * rowsPerChunk);
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                        matrixOffset + c * rowsPerChunk * rowBytes, chunkRows * rowBytes);
+                if (chunks != null) chunks[c] = mapped.order(ByteOrder.BIG_ENDIAN).asFloatBuffer();
+                else byteChunks[c] = mapped;
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static Map<String, Integer> readVocabulary(Path storeFile, int size) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(storeFile), 1 << 16))) {
+            in.skipBytes(16);
+            Map<String, Integer> vocabulary = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                byte[] bytes = new byte[in.readUnsignedShort()];
+                in.readFully(bytes);
+                vocabulary.put(new String(bytes, StandardCharsets.UTF_8), i);
+            }
+            return vocabulary;
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /** @return the number of components of every vector */
+    public int dimension() {
+        return dimension;
+    }
+
+    /** @return the number of words in the store */
+    public int size() {
+        return size;
+    }
+
+    /** @return how the matrix is stored */
+    public Encoding encoding() {
+        return encoding;
+    }
+
+    /**
+     * @param word the word to look up
+     * @return the row of the word, or -1 if the word is not in the store
+     */
+    public int indexOf(String word) {
+        if (vocabulary != null) {
+            Integer row = vocabulary.get(word);
+            return row == null ? -1 : row;
+        }
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        for (int slot = hash(key) & tableMask; ; slot = (slot + 1) & tableMask) {
+            int entry = tableOffset + slot * 8;
+            int row = index.getInt(entry) - 1;
+            if (row == -1) return -1;
+            if (wordEquals(wordsOffset + index.getInt(entry + 4), key)) return row;
+        }
+    }
+
+    private boolean wordEquals(int offset, byte[] key) {
+        if (index.getShort(offset) != key.length) return false;
+        for (int i = 0; i != key.length; i++)
+            if (index.get(offset + 2 + i) != key[i]) return false;
+        return true;
+    }
+
+    /** FNV-1a. */
+    private static int hash(byte[] key) {
+        int hash = 0x811c9dc5;
+        for (byte b : key) {
+            hash ^= b & 0xff;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    /**
+     * View over a row of the matrix: zero-copy for float32 stores, a dequantized copy for int8
+     * ones. The view is independent of any other view, so concurrent readers don't interfere with
+     * each other.
+     *
+     * @param index the row, as returned by {@link #indexOf(String)}
+     * @return a read-only buffer holding exactly {@link #dimension()} floats
+     */
+    public FloatBuffer row(int index) {
+        if (chunks == null) {
+            float[] values = new float[dimension];
+            addRow(index, values);
+            return FloatBuffer.wrap(values).asReadOnlyBuffer();
+        }
+        FloatBuffer view = chunks[index / rowsPerChunk].duplicate();
+        int start = (index % rowsPerChunk) * dimension;
+        view.position(start);
+        view.limit(start + dimension);
+        return view.slice();
+    }
+
+    /**
+     * Adds a row of the matrix to an accumulator, in place, without copying it first.
+     *
+     * @param index the row, as returned by {@link #indexOf(String)}
+     * @param accumulator the running sum, of {@link #dimension()} components
+     */
+    public void addRow(int index, float[] accumulator) {
+        addRow(index, 1, accumulator);
+    }
+
+    /**
+     * Adds a weighted row of the matrix to an accumulator, in place, without copying it first.
+     *
+     * @param index the row, as returned by {@link #indexOf(String)}
+     * @param weight the weight of the row
+     * @param accumulator the running sum, of {@link #dimension()} components
+     */
+    public void addRow(int index, float weight, float[] accumulator) {
+        int start = (index % rowsPerChunk) * dimension;
+        if (chunks != null) {
+            FloatBuffer chunk = chunks[index / rowsPerChunk];
+            for (int i = 0; i != dimension; i++) accumulator[i] += chunk.get(start + i) * weight;
+        } else {
+            ByteBuffer chunk = byteChunks[index / rowsPerChunk];
+            float scale = scales.get(index) * weight;
+            for (int i = 0; i != dimension; i++) accumulator[i] += chunk.get(start + i) * scale;
+        }
+    }
+
+    /**
+     * @param word the word to look up
+     * @return a zero-copy view over the vector of the word, or null if the word is not in the store
+     */
+    public FloatBuffer row(String word) {
+        int index = indexOf(word);
+        return index == -1 ? null : row(index);
+    }
+
+    @Override
+    public boolean contains(String word) {
+        return indexOf(word) != -1;
+    }
+
+    /**
+     * Copies the vector of a word on the heap. Kept for the {@code GloveRandomAccessReader}
+     * contract: hot paths should prefer {@link #row(String)}.
+     */
+    @Override
+    public DoubleVector get(String word) {
+        int index = indexOf(word);
+        if (index == -1) return null;
+        float[] row = new float[dimension];
+        addRow(index, row);
+        double[] values = new double[dimension];
+        for (int i = 0; i < dimension; i++) values[i] = row[i];
+        return new DenseDoubleVector(values);
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Converts a GloVe text file (one word per line, followed by its components separated by
+     * spaces) into a float32 store that can be opened by {@link #MappedGloveStore(Path)}.
+     *
+     * @param gloveTxt the GloVe text file
+     * @param storeFile the store file to write
+     * @throws IOException if one of the files couldn't be accessed or the text file is malformed
+     */
+    public static void convert(Path gloveTxt, Path storeFile) throws IOException {
+        convert(gloveTxt, storeFile, Encoding.FLOAT32, null);
+    }
+
+    /**
+     * Converts a GloVe text file into a store, optionally keeping only the words of a corpus:
+     * a store trimmed to the words of the classes to match is a few MBs, and opens instantly.
+     *
+     * @param gloveTxt the GloVe text file
+     * @param storeFile the store file to write
+     * @param encoding how the matrix is stored
+     * @param keep the words to keep, null to keep them all
+     * @throws IOException if one of the files couldn't be accessed or the text file is malformed
+     */
+    public static void convert(Path gloveTxt, Path storeFile, Encoding encoding, Set<String> keep)
+            throws IOException {
+        List<String> words = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        int dimension = -1;
+        Path matrix = Files.createTempFile("glove-matrix", ".bin");
+        try {
+            try (BufferedReader reader = Files.newBufferedReader(gloveTxt, StandardCharsets.UTF_8);
+                 DataOutputStream out = new DataOutputStream(
+                         new BufferedOutputStream(Files.newOutputStream(matrix), 1 << 16))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] tokens = line.trim().split(" ");
+                    if (tokens.length < 2) continue;
+                    if (dimension == -1) dimension = tokens.length - 1;
+                    else if (tokens.length - 1 != dimension)
+                        throw new IOException("Vector of '" + tokens[0] + "' has "
+                                + (tokens.length - 1) + " components, expected " + dimension);
+                    // Duplicated words would be unreachable in the hash table anyway.
+                    if ((keep != null && !keep.contains(tokens[0])) || !seen.add(tokens[0])) continue;
+                    words.add(tokens[0]);
+                    for (int i = 1; i < tokens.length; i++) out.writeFloat(Float.parseFloat(tokens[i]));
+                }
+            }
+            write(words, Math.max(dimension, 0), matrix, storeFile, encoding);
+        } finally {
+            Files.deleteIfExists(matrix);
+        }
+    }
+
+    private static void write(List<String> words, int dimension, Path matrix, Path storeFile, Encoding encoding)
+            throws IOException {
+        int size = words.size();
+        int slots = Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 1;
+        int[] table = new int[slots * 2];
+        int[] wordOffsets = new int[size];
+        long wordsBytes = 0;
+        for (int row = 0; row < size; row++) {
+            byte[] bytes = words.get(row).getBytes(StandardCharsets.UTF_8);
+            wordOffsets[row] = (int) wordsBytes;
+            wordsBytes += 2 + bytes.length;
+            int slot = hash(bytes) & (slots - 1);
+            while (table[slot * 2] != 0) slot = (slot + 1) & (slots - 1);
+            table[slot * 2] = row + 1;
+            table[slot * 2 + 1] = wordOffsets[row];
+        }
+        long wordsOffset = HEADER_BYTES;
+        long tableOffset = align(wordsOffset + wordsBytes);
+        long scalesOffset = tableOffset + slots * 8L;
+        long matrixOffset = encoding == Encoding.INT8 ? scalesOffset + size * (long) Float.BYTES : scalesOffset;
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(storeFile), 1 << 16));
+             DataInputStream in = new DataInputStream(
+                     new BufferedInputStream(Files.newInputStream(matrix), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dimension);
+            out.writeInt(size);
+            out.writeInt(encoding.ordinal());
+            out.writeInt(slots);
+            out.writeLong(wordsOffset);
+            out.writeLong(tableOffset);
+            out.writeLong(encoding == Encoding.INT8 ? scalesOffset : 0);
+            out.writeLong(matrixOffset);
+            for (String word : words) {
+                byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+            for (long i = wordsOffset + wordsBytes; i < tableOffset; i++) out.writeByte(0);
+            for (int value : table) out.writeInt(value);
+
+            if (encoding == Encoding.FLOAT32) {
+                copy(in, out, (long) size * dimension * Float.BYTES);
+                return;
+            }
+            // Scales first, then the quantized rows: the float matrix is read twice.
+            float[] row = new float[dimension];
+            for (int r = 0; r < size; r++) {
+                readRow(in, row);
+                out.writeFloat(scale(row));
+            }
+            try (DataInputStream again = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(matrix), 1 << 16))) {
+                for (int r = 0; r < size; r++) {
+                    readRow(again, row);
+                    float scale = scale(row);
+                    for (float value : row) out.writeByte(scale == 0 ? 0 : Math.round(value / scale));
+                }
+            }
+        }
+    }
+
+    /** @return the scale mapping the largest component of the row to 127 */
+    private static float scale(float[] row) {
+        float max = 0;
+        for (float value : row) max = Math.max(max, Math.abs(value));
+        return max / 127;
+    }
+
+    private static void readRow(DataInputStream in, float[] row) throws IOException {
+        for (int i = 0; i != row.length; i++) row[i] = in.readFloat();
+    }
+
+    private static void copy(InputStream in, OutputStream out, long bytes) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        while (bytes > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, bytes));
+            if (read == -1) throw new EOFException();
+            out.write(buffer, 0, read);
+            bytes -= read;
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + Float.BYTES - 1) / Float.BYTES * Float.BYTES;
+    }
+}
@@ -0,0 +1,107 @@
+package util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import matching.SemanticMatch;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Writes the {@code SemanticMatch}es of a class to its result file as soon as they're produced,
+ * serializing each of them once.
+ *
+ * Matches are written in the order they're produced. When the writer is closed, an index of the
+ * result file sorted by method is written next to it ({@code <result file>.index}, one line
+ * {@code offset<TAB>length<TAB>method} per match), so that only the method names and the offsets
+ * of the matches are kept in memory. No file is created if no match is written.
+ */
+public class MatchWriter implements Closeable {
+
+    private static final Comparator<IndexEntry> BY_METHOD =
+            Comparator.<IndexEntry, String>comparing(e -> e.method).thenComparingLong(e -> e.offset);
+
+    private static class IndexEntry {
+        final String method;
+        final long offset;
+        final int length;
+
+        IndexEntry(String method, long offset, int length) {
+            this.method = method;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final Path resultFile;
+    private final boolean compact;
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    private final StringWriter buffer = new StringWriter();
+    private final List<IndexEntry> index = new ArrayList<>();
+    private OutputStream out;
+    private long offset;
+
+    /**
+     * @param resultFile the file to write, replaced if it exists
+     * @param compact true to write every match on a single line, false to pretty print it
+     * @throws IOException if the existing file couldn't be deleted
+     */
+    public MatchWriter(Path resultFile, boolean compact) throws IOException {
+        this.resultFile = resultFile;
+        this.compact = compact;
+        Files.deleteIfExists(resultFile);
+        Files.deleteIfExists(indexFile());
+    }
+
+    /**
+     * Appends a match to the result file. Can be called concurrently.
+     *
+     * @param match the match to write
+     * @throws IOException if the file couldn't be written
+     */
+    public synchronized void write(SemanticMatch match) throws IOException {
+        if (out == null) out = new BufferedOutputStream(Files.newOutputStream(resultFile), 1 << 16);
+
+        buffer.getBuffer().setLength(0);
+        JsonWriter jsonWriter = new JsonWriter(buffer);
+        if (!compact) jsonWriter.setIndent("  ");
+        gson.toJson(match, SemanticMatch.class, jsonWriter);
+        buffer.write('\n');
+
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        index.add(new IndexEntry(match.getMethod(), offset, bytes.length));
+        offset += bytes.length;
+    }
+
+    /**
+     * Closes the result file and writes its index sorted by method.
+     *
+     * @throws IOException if one of the files couldn't be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (out == null) return;
+        out.close();
+        out = null;
+
+        index.sort(BY_METHOD);
+        try (BufferedWriter writer = Files.newBufferedWriter(indexFile(), StandardCharsets.UTF_8)) {
+            for (IndexEntry entry : index) {
+                writer.write(entry.offset + "\t" + entry.length + "\t" + entry.method);
+                writer.newLine();
+            }
+        }
+        index.clear();
+    }
+
+    private Path indexFile() {
+        return resultFile.resolveSibling(resultFile.getFileName() + ".index");
+    }
+}
@@ -1,61 +1,41 @@
 package util;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
-import matching.SemanticMatch;
 import matching.SemanticMatcher;
-import org.toradocu.extractor.DocumentedMethod;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.util.*;
+import java.nio.file.Paths;
 
 /**
  * Created by arianna on 27/06/17.
  */
 public class OutputUtil {
+
     /**
-     * Exports the result in a JSON format.
-     *
-     * @throws IOException if there were problems accessing the file
+     * @param matcher the matcher whose results are exported
+     * @return the name of the JSON file where the results of the matcher are exported, in its
+     *     output directory
      */
-    public static void exportTojson(boolean wmd, boolean concSim) throws IOException {
-        String resultFile="";
+    public static String resultFile(SemanticMatcher matcher, boolean wmd, boolean concSim) {
+        String fileName;
         if(wmd)
-            resultFile = SemanticMatcher.fileName+"_wmd.json";
+            fileName = matcher.fileName+"_wmd.json";
         else if(concSim)
-           resultFile = SemanticMatcher.fileName+"_concSim_results.json";
+            fileName = matcher.fileName+"_concSim_results.json";
         else
-            resultFile = SemanticMatcher.fileName+"_vectors_results.json";
-
-
-        File file = new File(resultFile);
-        try {
-            Files.deleteIfExists(file.toPath());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        Gson gson = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
-        if(!SemanticMatcher.semanticMatches.isEmpty()) {
-            SortedSet<SemanticMatch> matches = new TreeSet<SemanticMatch>();
-            matches.addAll(SemanticMatcher.semanticMatches);
-
-            BufferedWriter writer = new BufferedWriter(new FileWriter(resultFile, true));
-
-            for (SemanticMatch sm : matches) {
-                JsonParser jp = new JsonParser();
-                JsonElement je = jp.parse(gson.toJson(sm));
-                String prettyJsonString = gson.toJson(je);
+            fileName = matcher.fileName+"_vectors_results.json";
+        return matcher.outputDirectory().resolve(fileName).toString();
+    }
 
-                writer.write(prettyJsonString+"\n");
-                }
-            writer.close();
-        }
+    /**
+     * Opens the writer exporting the results in a JSON format, while they're produced.
+     *
+     * @param matcher the matcher whose results are exported
+     * @param compact true to write every result on a single line, false to pretty print it
+     * @return the writer of the result file
+     * @throws IOException if there were problems accessing the file
+     */
+    public static MatchWriter openResultWriter(SemanticMatcher matcher, boolean wmd, boolean concSim, boolean compact)
+            throws IOException {
+        return new MatchWriter(Paths.get(resultFile(matcher, wmd, concSim)), compact);
     }
 }
@@ -0,0 +1,173 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * A set of vectors packed row-wise in a single array, together with their norms.
+ *
+ * Scoring a query against all the rows becomes one matrix-vector product over contiguous memory,
+ * and scoring several queries a matrix-matrix product, which walks every row only once.
+ * Rows can be stored at a reduced {@link Precision}: queries stay in float32 and are scored
+ * directly against the reduced rows, whose norms are the ones of the reduced vectors.
+ */
+public class PackedVectors {
+
+    private final int size;
+    private final int dimension;
+    private final Precision precision;
+    /** The rows, in the array of their precision; the others are null. */
+    private final float[] matrix;
+    private final short[] halves;
+    private final byte[] bytes;
+    private final float[] scales;
+    private final double[] norms;
+    /** Rows whose vector is missing (e.g. none of its words is in GloVe) are never scored. */
+    private final boolean[] present;
+
+    /**
+     * @param vectors the vectors to pack, all of the same dimension; null entries are allowed
+     */
+    public PackedVectors(float[][] vectors) {
+        this(vectors, Precision.FLOAT32);
+    }
+
+    /**
+     * @param vectors the vectors to pack, all of the same dimension; null entries are allowed
+     * @param precision the precision the vectors are stored at
+     */
+    public PackedVectors(float[][] vectors, Precision precision) {
+        int dimension = 0;
+        for (float[] vector : vectors) {
+            if (vector != null) {
+                dimension = vector.length;
+                break;
+            }
+        }
+        this.size = vectors.length;
+        this.dimension = dimension;
+        this.precision = precision;
+        this.matrix = precision == Precision.FLOAT32 ? new float[size * dimension] : null;
+        this.halves = precision == Precision.FLOAT16 ? new short[size * dimension] : null;
+        this.bytes = precision == Precision.INT8 ? new byte[size * dimension] : null;
+        this.scales = precision == Precision.INT8 ? new float[size] : null;
+        this.norms = new double[size];
+        this.present = new boolean[size];
+        float[] stored = new float[dimension];
+        for (int r = 0; r != size; r++) {
+            if (vectors[r] == null) continue;
+            store(r, vectors[r], stored);
+            norms[r] = VectorKernel.norm(stored);
+            present[r] = true;
+        }
+    }
+
+    /** Stores a row, and copies the values actually stored in {@code stored}. */
+    private void store(int r, float[] vector, float[] stored) {
+        int base = r * dimension;
+        switch (precision) {
+            case FLOAT32:
+                System.arraycopy(vector, 0, matrix, base, dimension);
+                System.arraycopy(vector, 0, stored, 0, dimension);
+                break;
+            case FLOAT16:
+                for (int i = 0; i != dimension; i++) {
+                    halves[base + i] = Precision.toHalf(vector[i]);
+                    stored[i] = Precision.fromHalf(halves[base + i]);
+                }
+                break;
+            case INT8:
+                float max = 0;
+                for (float value : vector) max = Math.max(max, Math.abs(value));
+                float scale = max / 127;
+                scales[r] = scale;
+                for (int i = 0; i != dimension; i++) {
+                    bytes[base + i] = scale == 0 ? 0 : (byte) Math.round(vector[i] / scale);
+                    stored[i] = bytes[base + i] * scale;
+                }
+                break;
+        }
+    }
+
+    /** @return the number of rows */
+    public int size() {
+        return size;
+    }
+
+    /** @return the precision of the rows */
+    public Precision precision() {
+        return precision;
+    }
+
+    /** @return the dot product of a row and a query */
+    private double dot(int r, float[] query) {
+        int base = r * dimension;
+        double dot = 0;
+        switch (precision) {
+            case FLOAT32:
+                for (int i = 0; i != dimension; i++) dot += matrix[base + i] * query[i];
+                return dot;
+            case FLOAT16:
+                for (int i = 0; i != dimension; i++) dot += Precision.fromHalf(halves[base + i]) * query[i];
+                return dot;
+            default:
+                // The scale of the row is factored out of the sum.
+                for (int i = 0; i != dimension; i++) dot += bytes[base + i] * query[i];
+                return dot * scales[r];
+        }
+    }
+
+    /**
+     * @param r a row
+     * @param query the query vector, possibly null
+     * @param queryNorm the norm of the query vector
+     * @return the cosine distance of the query from the row, NaN for a missing row or query
+     */
+    public double cosineDistance(int r, float[] query, double queryNorm) {
+        if (query == null || !present[r]) return Double.NaN;
+        return VectorKernel.cosineDistance(dot(r, query), norms[r] * queryNorm);
+    }
+
+    /**
+     * @param query the query vector, possibly null
+     * @param queryNorm the norm of the query vector
+     * @return the cosine distance of the query from every row, NaN for missing rows or query
+     */
+    public double[] cosineDistances(float[] query, double queryNorm) {
+        double[] distances = new double[size];
+        for (int r = 0; r != size; r++) distances[r] = cosineDistance(r, query, queryNorm);
+        return distances;
+    }
+
+    /**
+     * Scores a query against some of the rows only, e.g. those returned by an approximate index.
+     *
+     * @param query the query vector, possibly null
+     * @param queryNorm the norm of the query vector
+     * @param rows the rows to score
+     * @return the cosine distance of the query from every row, NaN for missing rows or query and
+     *     for rows that were not scored
+     */
+    public double[] cosineDistances(float[] query, double queryNorm, int[] rows) {
+        double[] distances = new double[size];
+        Arrays.fill(distances, Double.NaN);
+        for (int r : rows) distances[r] = cosineDistance(r, query, queryNorm);
+        return distances;
+    }
+
+    /**
+     * @param queries the query vectors, possibly null
+     * @return the queries x rows matrix of cosine distances, NaN for missing rows or queries
+     */
+    public double[][] cosineDistances(float[][] queries) {
+        int m = queries.length;
+        double[] queryNorms = new double[m];
+        for (int q = 0; q != m; q++)
+            if (queries[q] != null) queryNorms[q] = VectorKernel.norm(queries[q]);
+
+        double[][] distances = new double[m][size];
+        for (int r = 0; r != size; r++) {
+            for (int q = 0; q != m; q++) distances[q][r] = cosineDistance(r, queries[q], queryNorms[q]);
+        }
+        return distances;
+    }
+}
@@ -0,0 +1,62 @@
+package util;
+
+/**
+ * Precision of the vectors kept on the heap for scoring. Lower precisions take less memory and
+ * memory bandwidth, at the price of small scoring errors.
+ */
+public enum Precision {
+    /** 4 bytes per component, exact. */
+    FLOAT32,
+    /** 2 bytes per component, IEEE half precision: about 3 significant digits. */
+    FLOAT16,
+    /** 1 byte per component, times a per-vector scale mapping the largest component to 127. */
+    INT8;
+
+    /** Every half precision value, so that decoding is a lookup. */
+    private static final float[] HALF_TO_FLOAT = new float[1 << 16];
+
+    static {
+        for (int h = 0; h != HALF_TO_FLOAT.length; h++) HALF_TO_FLOAT[h] = decodeHalf(h);
+    }
+
+    /**
+     * @return the half precision value nearest to a float, as its bits; ties go to the even
+     *     value, and values too large for a half become infinite, as in IEEE 754
+     */
+    static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int magnitude = bits & 0x7fffffff;
+        // Half of the dropped unit, minus one unless the kept last bit is odd: ties round to even.
+        int rounded = magnitude + 0xfff + ((magnitude >>> 13) & 1);
+        if (rounded >= 0x47800000) {
+            // Infinity, or NaN keeping its payload
+            if (magnitude > 0x7f800000) return (short) (sign | 0x7c00 | (magnitude & 0x007fffff) >>> 13 | 0x200);
+            return (short) (sign | 0x7c00);
+        }
+        if (rounded >= 0x38800000) return (short) (sign | ((rounded - 0x38000000) >>> 13));
+        if (rounded < 0x33000000) return (short) sign;
+        // Subnormal half
+        int exponent = magnitude >>> 23;
+        int shift = 126 - exponent;
+        int mantissa = (magnitude & 0x7fffff) | 0x800000;
+        return (short) (sign | ((mantissa + (1 << (shift - 1)) - 1 + ((mantissa >>> shift) & 1)) >>> shift));
+    }
+
+    /** @return the float value of a half precision value */
+    static float fromHalf(short half) {
+        return HALF_TO_FLOAT[half & 0xffff];
+    }
+
+    private static float decodeHalf(int half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+        if (exponent == 0) {
+            float value = mantissa * 0x1p-24f;
+            return sign == 0 ? value : -value;
+        }
+        if (exponent == 31) return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+}
@@ -0,0 +1,222 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Approximate nearest neighbour index for cosine distance over a pool of vectors: a forest of
+ * random projection trees, where every node splits its vectors with the hyperplane equidistant
+ * from two of them. A query walks all the trees best-first, visiting the leaves closest to its
+ * side of every hyperplane, until enough candidates are collected: lookups are sub-linear in the
+ * size of the pool, and the number of candidates trades recall for latency.
+ */
+public class RandomProjectionForest {
+
+    private static class Node {
+        /** Normal and offset of the splitting hyperplane; null normal for random splits. */
+        float[] normal;
+        double offset;
+        Node left;
+        Node right;
+        /** The vectors of a leaf, null for inner nodes. */
+        int[] items;
+    }
+
+    private static class Visit implements Comparable<Visit> {
+        final Node node;
+        /** The smallest margin from the hyperplanes crossed to get here: higher is closer. */
+        final double priority;
+
+        Visit(Node node, double priority) {
+            this.node = node;
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(Visit visit) {
+            return Double.compare(visit.priority, priority);
+        }
+    }
+
+    private final float[][] normalized;
+    private final int size;
+    private final int leafSize;
+    private final Random random;
+    private final List<Node> roots = new ArrayList<>();
+
+    /**
+     * @param vectors the vectors to index, all of the same dimension; null entries are never returned
+     * @param trees the number of trees, more trees give a better recall for the same number of candidates
+     * @param leafSize the maximum number of vectors in a leaf
+     * @param seed the seed of the random splits, for reproducible indexes
+     */
+    public RandomProjectionForest(float[][] vectors, int trees, int leafSize, long seed) {
+        this.size = vectors.length;
+        this.leafSize = Math.max(1, leafSize);
+        this.random = new Random(seed);
+        this.normalized = new float[size][];
+        int present = 0;
+        for (int i = 0; i != size; i++) {
+            if (vectors[i] == null) continue;
+            normalized[i] = normalize(vectors[i]);
+            present++;
+        }
+        int[] items = new int[present];
+        for (int i = 0, j = 0; i != size; i++)
+            if (normalized[i] != null) items[j++] = i;
+        for (int t = 0; t < trees; t++) roots.add(build(items.clone()));
+    }
+
+    /** @return the number of indexed positions, including the null ones */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Collects the vectors closest to a query, according to the trees.
+     *
+     * @param query the query vector
+     * @param searchK the number of candidates to collect; the leaves are visited whole, so a few
+     *     more can be returned
+     * @return the distinct positions of the candidates, in no particular order
+     */
+    public int[] candidates(float[] query, int searchK) {
+        float[] q = normalize(query);
+        PriorityQueue<Visit> queue = new PriorityQueue<>();
+        for (Node root : roots) queue.add(new Visit(root, Double.POSITIVE_INFINITY));
+
+        BitSet seen = new BitSet(size);
+        int[] found = new int[Math.min(size, Math.max(searchK, 0) + leafSize)];
+        int count = 0;
+        while (!queue.isEmpty() && count < searchK) {
+            Visit visit = queue.poll();
+            Node node = visit.node;
+            if (node.items != null) {
+                for (int item : node.items) {
+                    if (seen.get(item)) continue;
+                    seen.set(item);
+                    if (count == found.length) found = Arrays.copyOf(found, Math.min(size, count * 2));
+                    found[count++] = item;
+                }
+            } else if (node.normal == null) {
+                queue.add(new Visit(node.left, visit.priority));
+                queue.add(new Visit(node.right, visit.priority));
+            } else {
+                double margin = VectorKernel.dot(node.normal, q) - node.offset;
+                queue.add(new Visit(node.right, Math.min(visit.priority, margin)));
+                queue.add(new Visit(node.left, Math.min(visit.priority, -margin)));
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * The n nearest vectors among the candidates of a query, ranked by their exact distance.
+     *
+     * @param query the query vector
+     * @param n the number of neighbours
+     * @param searchK the number of candidates to rank
+     * @return the positions of the neighbours, nearest first
+     */
+    public int[] nearest(float[] query, int n, int searchK) {
+        return rank(normalize(query), candidates(query, searchK), n);
+    }
+
+    /**
+     * Measures the quality of the index: the fraction of the true n nearest neighbours of the
+     * queries found by {@link #nearest(float[], int, int)}.
+     *
+     * @param queries the query vectors
+     * @param n the number of neighbours
+     * @param searchK the number of candidates to rank
+     * @return the recall, between 0 and 1
+     */
+    public double recall(float[][] queries, int n, int searchK) {
+        int[] all = new int[size];
+        for (int i = 0; i != size; i++) all[i] = i;
+        long expected = 0, retrieved = 0;
+        for (float[] query : queries) {
+            int[] exact = rank(normalize(query), all, n);
+            BitSet approximate = new BitSet(size);
+            for (int item : nearest(query, n, searchK)) approximate.set(item);
+            expected += exact.length;
+            for (int item : exact)
+                if (approximate.get(item)) retrieved++;
+        }
+        return expected == 0 ? 1 : (double) retrieved / expected;
+    }
+
+    private int[] rank(float[] q, int[] items, int n) {
+        TopKSelector selector = new TopKSelector(n, false);
+        for (int item : items) {
+            if (normalized[item] != null) selector.offer(item, 1 - VectorKernel.dot(normalized[item], q));
+        }
+        selector.sort();
+        int[] ranked = new int[selector.size()];
+        for (int i = 0; i != ranked.length; i++) ranked[i] = selector.id(i);
+        return ranked;
+    }
+
+    private Node build(int[] items) {
+        Node node = new Node();
+        if (items.length <= leafSize) {
+            node.items = items;
+            return node;
+        }
+
+        float[] a = normalized[items[random.nextInt(items.length)]];
+        float[] b = normalized[items[random.nextInt(items.length)]];
+        float[] normal = new float[a.length];
+        double offset = 0;
+        for (int i = 0; i != normal.length; i++) {
+            normal[i] = a[i] - b[i];
+            offset += normal[i] * (a[i] + b[i]) / 2;
+        }
+
+        int[] sides = new int[items.length];
+        int right = 0;
+        for (int i = 0; i != items.length; i++) {
+            if (VectorKernel.dot(normal, normalized[items[i]]) - offset > 0) {
+                sides[i] = 1;
+                right++;
+            }
+        }
+        if (right == 0 || right == items.length) {
+            // Identical (or unlucky) points: split them at random, queries will visit both halves.
+            normal = null;
+            right = 0;
+            for (int i = 0; i != items.length; i++) {
+                sides[i] = random.nextBoolean() ? 1 : 0;
+                right += sides[i];
+            }
+            if (right == 0 || right == items.length) {
+                sides[0] = 1 - sides[0];
+                right += sides[0] == 1 ? 1 : -1;
+            }
+        }
+
+        int[] rightItems = new int[right];
+        int[] leftItems = new int[items.length - right];
+        for (int i = 0, r = 0, l = 0; i != items.length; i++) {
+            if (sides[i] == 1) rightItems[r++] = items[i];
+            else leftItems[l++] = items[i];
+        }
+        node.normal = normal;
+        node.offset = offset;
+        node.left = build(leftItems);
+        node.right = build(rightItems);
+        return node;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = VectorKernel.norm(vector);
+        float[] normalized = new float[vector.length];
+        if (norm == 0) return normalized;
+        for (int i = 0; i != vector.length; i++) normalized[i] = (float) (vector[i] / norm);
+        return normalized;
+    }
+}
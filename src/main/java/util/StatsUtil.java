@@ -4,12 +4,15 @@ import matching.ConceptualMatcher;
 import matching.SemanticMatch;
 import matching.SemanticMatcher;
 import matching.WMDMatcher;
+import org.toradocu.extractor.Tag;
+import org.toradocu.extractor.ThrowsTag;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.util.Set;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Created by arianna on 27/06/17.
@@ -21,15 +24,7 @@ public class StatsUtil {
             File file = new File("semanticStats.csv");
             FileWriter writer = new FileWriter(file, true);
 
-            if(matcher instanceof ConceptualMatcher)
-                writer.append("Conceptual Matcher");
-            else  if(matcher instanceof WMDMatcher)
-                writer.append("WMD Matcher");
-            else
-                writer.append("Basic Vector Matcher");
-
-
-
+            writer.append(matcherName(matcher));
             writer.append("\n");
 
             writer.append("Class Name");
@@ -37,29 +32,81 @@ public class StatsUtil {
             writer.append(matcher.className);
             writer.append("\n");
 
-            int totCorrect = 0;
-            int totPartial = 0;
-            int totFail = 0;
-            for(SemanticMatch sm : matcher.semanticMatches){
-                if(sm.topCandidateIsCorrect){
-                    totCorrect++;
-                }else if(sm.candidateFound){
-                    totPartial++;
-                }else
-                    totFail++;
-            }
+            int[] counts = countMatches(matcher);
 
             writer.append("Correct matches");
             writer.append(",");
-            writer.append(String.valueOf(totCorrect));
+            writer.append(String.valueOf(counts[0]));
             writer.append("\n");
             writer.append("Partially correct matches");
             writer.append(",");
-            writer.append(String.valueOf(totPartial));
+            writer.append(String.valueOf(counts[1]));
             writer.append("\n");
             writer.append("Failed matches");
             writer.append(",");
-            writer.append(String.valueOf(totFail));
+            writer.append(String.valueOf(counts[2]));
+
+            writer.append("\n\n");
+            writer.close();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Compares the matches of a class computed at full precision with the ones computed by the
+     * same matcher at a reduced precision, appending the comparison to precisionStats.csv. Both
+     * matchers have to keep their matches.
+     *
+     * @param reference the matcher run at full precision
+     * @param reduced the same matcher, run on the same class at a reduced precision
+     * @see SemanticMatcher#setKeepMatches(boolean)
+     */
+    public static void computePrecisionStats(SemanticMatcher reference, SemanticMatcher reduced){
+        try {
+            File file = new File("precisionStats.csv");
+            FileWriter writer = new FileWriter(file, true);
+
+            writer.append(matcherName(reference));
+            writer.append("\n");
+
+            writer.append("Class Name");
+            writer.append(",");
+            writer.append(reference.className);
+            writer.append("\n");
+
+            writer.append("Precision,");
+            writer.append(reference.precision().toString());
+            writer.append(",");
+            writer.append(reduced.precision().toString());
+            writer.append(",Difference\n");
+
+            int[] referenceCounts = countMatches(reference);
+            int[] reducedCounts = countMatches(reduced);
+            String[] labels = {"Correct matches", "Partially correct matches", "Failed matches"};
+            for (int i = 0; i != labels.length; i++) {
+                writer.append(labels[i]);
+                writer.append(",");
+                writer.append(String.valueOf(referenceCounts[i]));
+                writer.append(",");
+                writer.append(String.valueOf(reducedCounts[i]));
+                writer.append(",");
+                writer.append(String.valueOf(reducedCounts[i] - referenceCounts[i]));
+                writer.append("\n");
+            }
+
+            // Tags whose top candidate changed, even if still correct (or still wrong).
+            Map<String, String> topCandidates = new HashMap<>();
+            for (SemanticMatch sm : reference.semanticMatches) topCandidates.put(key(sm), topCandidate(sm));
+            int changed = 0;
+            for (SemanticMatch sm : reduced.semanticMatches) {
+                if (!topCandidate(sm).equals(topCandidates.remove(key(sm)))) changed++;
+            }
+            changed += topCandidates.size();
+            writer.append("Changed top candidates");
+            writer.append(",");
+            writer.append(String.valueOf(changed));
 
             writer.append("\n\n");
             writer.close();
@@ -68,4 +115,32 @@ public class StatsUtil {
             e.printStackTrace();
         }
     }
+
+    /**
+     * @param matcher a matcher that has been run
+     * @return the number of correct, partially correct and failed matches
+     */
+    public static int[] countMatches(SemanticMatcher matcher){
+        return matcher.matchCounts();
+    }
+
+    private static String matcherName(SemanticMatcher matcher){
+        if(matcher instanceof ConceptualMatcher)
+            return "Conceptual Matcher";
+        else  if(matcher instanceof WMDMatcher)
+            return "WMD Matcher";
+        else
+            return "Basic Vector Matcher";
+    }
+
+    /** @return the identity of the tag of a match: a method can have tags with the same comment */
+    private static String key(SemanticMatch sm){
+        Tag tag = sm.getTag();
+        String exception = tag instanceof ThrowsTag ? ((ThrowsTag) tag).getException().getQualifiedName() : "";
+        return sm.getMethod() + "\u0000" + tag.getKind() + "\u0000" + exception + "\u0000" + tag.getComment();
+    }
+
+    private static String topCandidate(SemanticMatch sm){
+        return sm.getCandidates().keySet().iterator().next().getCodeElementName();
+    }
 }
@@ -0,0 +1,86 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe dictionary of the tokens of comments and identifiers, which gives every token a
+ * dense integer ID.
+ *
+ * Tokens are lowercased once, when they are interned; from then on they're compared, counted and
+ * looked up by ID, so the inner loops of the matchers neither allocate nor hash strings. IDs are
+ * never reused, and are only meaningful within the same process.
+ */
+public final class TokenDictionary {
+
+    private static final TokenDictionary SHARED = new TokenDictionary();
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    /** The token of every ID; only grown under the lock. */
+    private volatile String[] tokens = new String[1024];
+    private volatile int size;
+
+    /** @return the dictionary shared by all the matchers */
+    public static TokenDictionary shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param token a token, in any case
+     * @return the ID of the lowercased token, which is added to the dictionary if it's new
+     */
+    public int intern(String token) {
+        String key = token.toLowerCase();
+        Integer id = ids.get(key);
+        return id != null ? id : add(key);
+    }
+
+    /** @return the IDs of the tokens, in the same order */
+    public int[] intern(String[] tokens) {
+        int[] result = new int[tokens.length];
+        for (int i = 0; i != tokens.length; i++) result[i] = intern(tokens[i]);
+        return result;
+    }
+
+    /** @return the IDs of the tokens, in their iteration order */
+    public int[] intern(Collection<String> tokens) {
+        int[] result = new int[tokens.size()];
+        int i = 0;
+        for (String token : tokens) result[i++] = intern(token);
+        return result;
+    }
+
+    private synchronized int add(String key) {
+        Integer id = ids.get(key);
+        if (id != null) return id;
+        if (size == tokens.length) tokens = Arrays.copyOf(tokens, size * 2);
+        tokens[size] = key;
+        // The token is published before its ID, so that every visible ID can be resolved.
+        ids.put(key, size);
+        return size++;
+    }
+
+    /**
+     * @param token a token, in any case
+     * @return the ID of the lowercased token, -1 if it was never interned
+     */
+    public int id(String token) {
+        Integer id = ids.get(token.toLowerCase());
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id an ID returned by {@link #intern(String)}
+     * @return the lowercased token
+     */
+    public String token(int id) {
+        return tokens[id];
+    }
+
+    /** @return the number of tokens, which is also the first ID not yet assigned */
+    public int size() {
+        return size;
+    }
+}
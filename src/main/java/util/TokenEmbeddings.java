@@ -0,0 +1,115 @@
+package util;
+
+import de.jungblut.glove.GloveRandomAccessReader;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The GloVe vectors of the tokens of a {@link TokenDictionary}, looked up by token ID.
+ *
+ * Every token is resolved only the first time it's asked for: with a {@link MappedGloveStore} its
+ * row is remembered, and then added straight from the mapped matrix; with any other database its
+ * vector is copied. Thread-safe.
+ */
+public class TokenEmbeddings {
+
+    /** Row of the tokens not resolved yet. */
+    private static final int UNRESOLVED = -2;
+    /** Row of the tokens having no vector. */
+    private static final int MISSING = -1;
+
+    private final GloveRandomAccessReader db;
+    private final TokenDictionary dictionary;
+    /** Non-null if {@link #db} is a mapped store. */
+    private final MappedGloveStore store;
+    private int[] rows = new int[0];
+    private float[][] vectors = new float[0][];
+
+    /**
+     * @param db gloVe database
+     * @param dictionary the dictionary of the token IDs
+     */
+    public TokenEmbeddings(GloveRandomAccessReader db, TokenDictionary dictionary) {
+        this.db = db;
+        this.dictionary = dictionary;
+        this.store = db instanceof MappedGloveStore ? (MappedGloveStore) db : null;
+    }
+
+    /** @return the dictionary of the token IDs */
+    public TokenDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Adds the vector of a token to an accumulator, like {@link VectorKernel#accumulate}.
+     *
+     * @param token the ID of the token whose vector is added
+     * @param accumulator the running sum, null if no vector has been added yet
+     * @return the accumulator, allocated if it was null and the token has a vector; null if the
+     *     accumulator was null and the token has no vector
+     * @throws IOException if the database couldn't be read
+     */
+    public float[] accumulate(int token, float[] accumulator) throws IOException {
+        return accumulate(token, 1, accumulator);
+    }
+
+    /**
+     * Adds the weighted vector of a token to an accumulator.
+     *
+     * @param token the ID of the token whose vector is added
+     * @param weight the weight of the vector
+     * @param accumulator the running sum, null if no vector has been added yet
+     * @return the accumulator, allocated if it was null and the token has a vector; null if the
+     *     accumulator was null and the token has no vector
+     * @throws IOException if the database couldn't be read
+     */
+    public float[] accumulate(int token, float weight, float[] accumulator) throws IOException {
+        int row = row(token);
+        if (row == MISSING) return accumulator;
+        if (store != null) {
+            if (accumulator == null) accumulator = new float[store.dimension()];
+            store.addRow(row, weight, accumulator);
+            return accumulator;
+        }
+        float[] vector = vector(token);
+        if (accumulator == null) accumulator = new float[vector.length];
+        for (int i = 0; i != accumulator.length; i++) accumulator[i] += vector[i] * weight;
+        return accumulator;
+    }
+
+    /**
+     * @param tokens the IDs of the tokens to look up
+     * @return the vectors, in the order of the tokens; null for tokens that have no vector
+     * @throws IOException if the database couldn't be read
+     */
+    public float[][] lookup(int[] tokens) throws IOException {
+        float[][] result = new float[tokens.length][];
+        for (int i = 0; i != tokens.length; i++) result[i] = accumulate(tokens[i], null);
+        return result;
+    }
+
+    /** @return the row of the token in the store (0 for other databases), or MISSING */
+    private synchronized int row(int token) throws IOException {
+        if (token >= rows.length) {
+            int length = Math.max(token + 1, rows.length * 2);
+            int from = rows.length;
+            rows = Arrays.copyOf(rows, length);
+            Arrays.fill(rows, from, length, UNRESOLVED);
+            if (store == null) vectors = Arrays.copyOf(vectors, length);
+        }
+        if (rows[token] == UNRESOLVED) {
+            String word = dictionary.token(token);
+            if (store != null) rows[token] = store.indexOf(word);
+            else {
+                vectors[token] = VectorKernel.accumulate(db, word, null);
+                rows[token] = vectors[token] == null ? MISSING : 0;
+            }
+        }
+        return rows[token];
+    }
+
+    private synchronized float[] vector(int token) {
+        return vectors[token];
+    }
+}
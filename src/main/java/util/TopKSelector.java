@@ -0,0 +1,120 @@
+package util;
+
+/**
+ * Keeps the K best scores offered to it, with the ids of their owners, in a fixed-size primitive
+ * heap: selecting the best candidates costs O(n log K) and allocates nothing per candidate, instead
+ * of boxing and sorting all the n scores.
+ *
+ * Scores can be distances (lower is better) or similarities (higher is better). Ties are broken
+ * by id, lower ids first, so the selection doesn't depend on the order of the offers.
+ */
+public class TopKSelector {
+
+    private final int k;
+    private final boolean higherIsBetter;
+    private final int[] ids;
+    private final double[] scores;
+    private int size;
+    private boolean sorted;
+
+    /**
+     * @param k the number of scores to keep
+     * @param higherIsBetter true for similarities, false for distances
+     */
+    public TopKSelector(int k, boolean higherIsBetter) {
+        if (k < 1) throw new IllegalArgumentException("K must be positive, was " + k);
+        this.k = k;
+        this.higherIsBetter = higherIsBetter;
+        this.ids = new int[k];
+        this.scores = new double[k];
+    }
+
+    /**
+     * Offers a score, kept only if it is among the K best seen so far. NaN scores are ignored.
+     *
+     * @param id the id of the owner of the score, e.g. its index in a list of candidates
+     * @param score the score
+     */
+    public void offer(int id, double score) {
+        if (sorted) throw new IllegalStateException("Selector already sorted, reset it before offering");
+        if (Double.isNaN(score)) return;
+        if (size < k) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (worse(ids[0], scores[0], id, score)) {
+            // The root is the worst of the K best: the new score replaces it.
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+    }
+
+    /** @return the number of scores kept, at most K */
+    public int size() {
+        return size;
+    }
+
+    /** Orders the kept scores best first. No score can be offered until {@link #reset()}. */
+    public void sort() {
+        if (sorted) return;
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        sorted = true;
+    }
+
+    /** @return the id of the i-th best score, once {@link #sort() sorted} */
+    public int id(int i) {
+        return ids[i];
+    }
+
+    /** @return the i-th best score, once {@link #sort() sorted} */
+    public double score(int i) {
+        return scores[i];
+    }
+
+    /** Empties the selector, so that it can be reused. */
+    public void reset() {
+        size = 0;
+        sorted = false;
+    }
+
+    /** The heap keeps its worst entry at the root. */
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!worse(ids[i], scores[i], ids[parent], scores[parent])) return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int end) {
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < end && worse(ids[left], scores[left], ids[worst], scores[worst])) worst = left;
+            if (right < end && worse(ids[right], scores[right], ids[worst], scores[worst])) worst = right;
+            if (worst == i) return;
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private boolean worse(int idA, double scoreA, int idB, double scoreB) {
+        if (scoreA != scoreB) return higherIsBetter ? scoreA < scoreB : scoreA > scoreB;
+        return idA > idB;
+    }
+
+    private void swap(int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+}
@@ -0,0 +1,117 @@
+package util;
+
+import de.jungblut.glove.GloveRandomAccessReader;
+import de.jungblut.math.DoubleVector;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Vector arithmetic over primitive {@code float[]}s, shared by all the matchers.
+ *
+ * Vectors are stored in float32, as in the GloVe files, which halves the memory traffic with
+ * respect to {@code DoubleVector}s. Sums are accumulated in place, so building the vector of a
+ * comment or of a code element allocates a single array however many words it has; with a
+ * {@code MappedGloveStore} the words are added straight from the mapped rows.
+ */
+public final class VectorKernel {
+
+    private VectorKernel() {}
+
+    /**
+     * Adds the vector of a word to an accumulator.
+     *
+     * @param db gloVe database
+     * @param word the word whose vector is added
+     * @param accumulator the running sum, null if no vector has been added yet
+     * @return the accumulator, allocated if it was null and the word has a vector; null if the
+     *     accumulator was null and the word has no vector
+     * @throws IOException if the database couldn't be read
+     */
+    public static float[] accumulate(GloveRandomAccessReader db, String word, float[] accumulator) throws IOException {
+        if (db instanceof MappedGloveStore) {
+            MappedGloveStore store = (MappedGloveStore) db;
+            int index = store.indexOf(word);
+            if (index == -1) return accumulator;
+            if (accumulator == null) accumulator = new float[store.dimension()];
+            store.addRow(index, accumulator);
+            return accumulator;
+        }
+
+        DoubleVector v = db.get(word);
+        if (v == null) return accumulator;
+        if (accumulator == null) accumulator = new float[v.getDimension()];
+        for (int i = 0; i != accumulator.length; i++) accumulator[i] += v.get(i);
+        return accumulator;
+    }
+
+    /** @return the norms of the vectors, 0 for null ones */
+    public static double[] norms(float[][] vectors) {
+        double[] norms = new double[vectors.length];
+        for (int i = 0; i != vectors.length; i++)
+            if (vectors[i] != null) norms[i] = norm(vectors[i]);
+        return norms;
+    }
+
+    /**
+     * Computes the first principal component of a set of vectors, without centering them (the
+     * common direction removed by SIF), by power iteration.
+     *
+     * @param vectors the vectors, null entries are ignored
+     * @param iterations the number of power iterations
+     * @return the unit principal component, null if there are no non-zero vectors
+     */
+    public static float[] principalComponent(float[][] vectors, int iterations) {
+        int dimension = 0;
+        for (float[] vector : vectors)
+            if (vector != null) dimension = vector.length;
+        if (dimension == 0) return null;
+
+        double[] component = new double[dimension];
+        Arrays.fill(component, 1 / Math.sqrt(dimension));
+        for (int iteration = 0; iteration != iterations; iteration++) {
+            // component = X^T X component, then normalized
+            double[] next = new double[dimension];
+            for (float[] vector : vectors) {
+                if (vector == null) continue;
+                double projection = 0;
+                for (int i = 0; i != dimension; i++) projection += vector[i] * component[i];
+                for (int i = 0; i != dimension; i++) next[i] += projection * vector[i];
+            }
+            double norm = 0;
+            for (double value : next) norm += value * value;
+            norm = Math.sqrt(norm);
+            if (norm == 0) return null;
+            for (int i = 0; i != dimension; i++) component[i] = next[i] / norm;
+        }
+
+        float[] result = new float[dimension];
+        for (int i = 0; i != dimension; i++) result[i] = (float) component[i];
+        return result;
+    }
+
+    /** Removes from a vector, in place, its projection on a unit vector. */
+    public static void removeProjection(float[] vector, float[] unit) {
+        double projection = dot(vector, unit);
+        for (int i = 0; i != vector.length; i++) vector[i] -= projection * unit[i];
+    }
+
+    public static double dot(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i != a.length; i++) dot += a[i] * b[i];
+        return dot;
+    }
+
+    public static double norm(float[] a) {
+        return Math.sqrt(dot(a, a));
+    }
+
+    /** Cosine distance from a dot product and the product of the two norms. */
+    static double cosineDistance(double dot, double denominator) {
+        // correct for floating-point rounding errors
+        if (denominator < dot) denominator = dot;
+        // correct for zero-vector corner case
+        if (denominator == 0 && dot == 0) return 0;
+        return 1.0 - dot / denominator;
+    }
+}
@@ -0,0 +1,243 @@
+package util;
+
+import de.jungblut.glove.GloveRandomAccessReader;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Word Mover's Distance of a query from many candidates, solving the exact distance only for the
+ * candidates that could still be among the K nearest ones (Kusner et al., "From Word Embeddings
+ * To Document Distances").
+ *
+ * Candidates are visited by increasing word centroid distance (WCD), a cheap lower bound of the
+ * WMD. Once K exact distances are known, a candidate is solved only if its relaxed WMD (RWMD),
+ * usually a tighter lower bound, is below the K-th best of them; and as soon as the WCD alone is above it,
+ * all the remaining candidates are skipped.
+ */
+public class WordMoversEngine {
+
+    /** The source of the word vectors. */
+    public interface Embedding {
+        /** @return the vector of the word, null if it has none */
+        float[] vector(String word) throws IOException;
+    }
+
+    /** The exact distance of two documents, the most expensive part of the computation. */
+    public interface ExactDistance {
+        /**
+         * @param a the first document
+         * @param b the second document
+         * @param cost the euclidean distances of the words of a (rows) from the words of b (columns)
+         * @return the Word Mover's Distance of the documents
+         */
+        double distance(Document a, Document b, double[] cost);
+    }
+
+    /** A normalized bag of words, restricted to the words having a vector. */
+    public static final class Document {
+        public final String text;
+        public final String[] words;
+        public final float[][] vectors;
+        public final double[] weights;
+        /** The weighted mean of the vectors, null if no word has a vector. */
+        final float[] centroid;
+
+        Document(String text, String[] words, float[][] vectors, double[] weights) {
+            this.text = text;
+            this.words = words;
+            this.vectors = vectors;
+            this.weights = weights;
+            if (vectors.length == 0) {
+                centroid = null;
+                return;
+            }
+            centroid = new float[vectors[0].length];
+            for (int w = 0; w != vectors.length; w++)
+                for (int i = 0; i != centroid.length; i++) centroid[i] += weights[w] * vectors[w][i];
+        }
+
+        /** @return true if none of the words has a vector */
+        public boolean isEmpty() {
+            return vectors.length == 0;
+        }
+    }
+
+    private final Embedding embedding;
+    private final ExactDistance exact;
+    private final AtomicLong exactSolves = new AtomicLong();
+    private final AtomicLong skippedSolves = new AtomicLong();
+
+    public WordMoversEngine(Embedding embedding, ExactDistance exact) {
+        this.embedding = embedding;
+        this.exact = exact;
+    }
+
+    /**
+     * An engine reading the vectors from the same store of the other matchers, and solving the
+     * exact distances with {@link EarthMoversDistance}.
+     *
+     * @param db gloVe database
+     */
+    public WordMoversEngine(GloveRandomAccessReader db) {
+        this(word -> VectorKernel.accumulate(db, word, null),
+                (a, b, cost) -> EarthMoversDistance.distance(a.weights, b.weights, cost));
+    }
+
+    /**
+     * @param text whitespace-separated words
+     * @return the normalized bag of the words of the text that have a vector
+     * @throws IOException if the vectors couldn't be read
+     */
+    public Document document(String text) throws IOException {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String word : text.trim().split("\\s+")) {
+            if (!word.isEmpty()) counts.merge(word, 1, Integer::sum);
+        }
+        List<String> words = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        List<Integer> wordCounts = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            float[] vector = embedding.vector(count.getKey());
+            if (vector == null) continue;
+            words.add(count.getKey());
+            vectors.add(vector);
+            wordCounts.add(count.getValue());
+            total += count.getValue();
+        }
+        double[] weights = new double[words.size()];
+        for (int w = 0; w != weights.length; w++) weights[w] = (double) wordCounts.get(w) / total;
+        return new Document(text, words.toArray(new String[0]), vectors.toArray(new float[0][]), weights);
+    }
+
+    /**
+     * Computes the distance of a query from the candidates that could be among the K nearest.
+     *
+     * @param query the query document
+     * @param candidates the candidate documents, null for candidates not to score
+     * @param k the number of nearest candidates needed
+     * @param maxDistance candidates farther than this are not needed either
+     * @param missing the distance of the documents having no word vectors
+     * @return the distance of every candidate; NaN for null candidates and for candidates that
+     *     can't be among the K nearest, whose exact distance was never solved
+     */
+    public double[] distances(Document query, Document[] candidates, int k, double maxDistance, double missing) {
+        int n = candidates.length;
+        double[] distances = new double[n];
+        Arrays.fill(distances, Double.NaN);
+        KthBest best = new KthBest(k);
+
+        Integer[] order = new Integer[n];
+        double[] centroidDistances = new double[n];
+        int solvable = 0;
+        for (int i = 0; i != n; i++) {
+            if (candidates[i] == null) continue;
+            if (query.isEmpty() || candidates[i].isEmpty()) {
+                distances[i] = missing;
+                best.add(missing);
+                continue;
+            }
+            centroidDistances[i] = euclidean(query.centroid, candidates[i].centroid);
+            order[solvable++] = i;
+        }
+        Arrays.sort(order, 0, solvable, Comparator.comparingDouble(i -> centroidDistances[i]));
+
+        for (int o = 0; o != solvable; o++) {
+            int i = order[o];
+            double cutoff = Math.min(best.get(), maxDistance);
+            if (centroidDistances[i] > cutoff) {
+                // Candidates are sorted by WCD: none of the remaining ones can get below the cutoff.
+                skippedSolves.addAndGet(solvable - o);
+                break;
+            }
+            Document candidate = candidates[i];
+            double[] cost = costs(query, candidate);
+            if (relaxedDistance(query, candidate, cost) > cutoff) {
+                skippedSolves.incrementAndGet();
+                continue;
+            }
+            distances[i] = exact.distance(query, candidate, cost);
+            exactSolves.incrementAndGet();
+            best.add(distances[i]);
+        }
+        return distances;
+    }
+
+    /** @return the number of exact distances solved */
+    public long exactSolves() {
+        return exactSolves.get();
+    }
+
+    /** @return the number of exact distances not solved, thanks to the lower bounds */
+    public long skippedSolves() {
+        return skippedSolves.get();
+    }
+
+    /** @return the euclidean distances of the words of a from the words of b, row-major */
+    static double[] costs(Document a, Document b) {
+        int cols = b.vectors.length;
+        double[] cost = new double[a.vectors.length * cols];
+        for (int i = 0; i != a.vectors.length; i++)
+            for (int j = 0; j != cols; j++) cost[i * cols + j] = euclidean(a.vectors[i], b.vectors[j]);
+        return cost;
+    }
+
+    /**
+     * Relaxed WMD: the largest of the two costs obtained moving every word to the nearest word of
+     * the other document, without capacity constraints. A lower bound of the WMD.
+     */
+    static double relaxedDistance(Document a, Document b, double[] cost) {
+        int rows = a.vectors.length;
+        int cols = b.vectors.length;
+        double fromA = 0;
+        double[] nearestToB = new double[cols];
+        Arrays.fill(nearestToB, Double.POSITIVE_INFINITY);
+        for (int i = 0; i != rows; i++) {
+            double nearest = Double.POSITIVE_INFINITY;
+            for (int j = 0; j != cols; j++) {
+                double c = cost[i * cols + j];
+                if (c < nearest) nearest = c;
+                if (c < nearestToB[j]) nearestToB[j] = c;
+            }
+            fromA += a.weights[i] * nearest;
+        }
+        double fromB = 0;
+        for (int j = 0; j != cols; j++) fromB += b.weights[j] * nearestToB[j];
+        return Math.max(fromA, fromB);
+    }
+
+    static double euclidean(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i != a.length; i++) {
+            double d = a[i] - b[i];
+            sum += d * d;
+        }
+        return Math.sqrt(sum);
+    }
+
+    /** The K-th smallest of the distances added so far, K being small. */
+    private static final class KthBest {
+        private final double[] best;
+        private int size;
+
+        KthBest(int k) {
+            best = new double[k];
+        }
+
+        void add(double distance) {
+            if (size == best.length && distance >= best[size - 1]) return;
+            int i = size == best.length ? size - 1 : size++;
+            while (i > 0 && best[i - 1] > distance) {
+                best[i] = best[i - 1];
+                i--;
+            }
+            best[i] = distance;
+        }
+
+        double get() {
+            return size == best.length ? best[size - 1] : Double.POSITIVE_INFINITY;
+        }
+    }
+}
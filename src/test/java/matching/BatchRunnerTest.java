@@ -0,0 +1,84 @@
+package matching;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchRunnerTest {
+
+    @Test
+    public void testClassFilesArePairedByClassName() throws IOException {
+        Path input = Files.createTempDirectory("batch");
+        try {
+            Path goals = Files.createDirectories(input.resolve("goals/project"));
+            Path codeElements = Files.createDirectories(input.resolve("code-elements"));
+            Files.createFile(goals.resolve("org.Foo_goal.json"));
+            Files.createFile(goals.resolve("org.Bar_goal.json"));
+            Files.createFile(goals.resolve("org.Missing_goal.json"));
+            Files.createFile(codeElements.resolve("org.Foo_codeElements.json"));
+            Files.createFile(codeElements.resolve("org.Bar_codeElements.json"));
+            Files.createFile(codeElements.resolve("notes.txt"));
+
+            List<BatchRunner.ClassFiles> classes = BatchRunner.classFiles(input);
+            assertEquals(2, classes.size());
+            assertEquals("org.Bar", classes.get(0).className);
+            assertEquals("org.Foo", classes.get(1).className);
+            assertEquals(goals.resolve("org.Foo_goal.json").toFile(), classes.get(1).goal);
+            assertEquals(codeElements.resolve("org.Foo_codeElements.json").toFile(), classes.get(1).codeElements);
+        } finally {
+            try (Stream<Path> files = Files.walk(input)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testDuplicatedClassesAreSkipped() throws IOException {
+        Path input = Files.createTempDirectory("batch");
+        try {
+            Path first = Files.createDirectories(input.resolve("project-1"));
+            Path second = Files.createDirectories(input.resolve("project-2"));
+            Files.createFile(first.resolve("org.Foo_goal.json"));
+            Files.createFile(first.resolve("org.Foo_codeElements.json"));
+            Files.createFile(second.resolve("org.Foo_goal.json"));
+            Files.createFile(first.resolve("org.Bar_goal.json"));
+            Files.createFile(second.resolve("org.Bar_codeElements.json"));
+
+            List<BatchRunner.ClassFiles> classes = BatchRunner.classFiles(input);
+            assertEquals(1, classes.size());
+            assertEquals("org.Bar", classes.get(0).className);
+        } finally {
+            try (Stream<Path> files = Files.walk(input)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testReportHasTotalsPerMatcher() throws IOException {
+        List<BatchRunner.ClassReport> reports = new ArrayList<>(Arrays.asList(
+                new BatchRunner.ClassReport("org.Foo", "vector", new int[] {3, 1, 2}, 10),
+                new BatchRunner.ClassReport("org.Bar", "vector", new int[] {1, 0, 4}, 5),
+                new BatchRunner.ClassReport("org.Bar", "wmd", null, 7)));
+        Path report = Files.createTempFile("report", ".csv");
+        try {
+            BatchRunner.writeReport(report, reports);
+            List<String> lines = Files.readAllLines(report);
+            assertEquals("org.Bar,vector,1,0,4,5", lines.get(1));
+            assertEquals("org.Bar,wmd,error,error,error,7", lines.get(2));
+            assertEquals("org.Foo,vector,3,1,2,10", lines.get(3));
+            assertEquals("Total,vector,4,1,6,15,0", lines.get(6));
+            assertEquals("Total,wmd,0,0,0,7,1", lines.get(7));
+        } finally {
+            Files.deleteIfExists(report);
+        }
+    }
+}
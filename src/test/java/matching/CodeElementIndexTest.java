@@ -0,0 +1,112 @@
+package matching;
+
+import org.junit.Test;
+import util.CandidateRepository;
+import util.MappedGloveStore;
+import util.SimpleMethodCodeElement;
+import util.TokenDictionary;
+import util.VectorKernel;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CodeElementIndexTest {
+
+    private static final String CLASS_NAME = "net.sf.freecol.common.model.Unit";
+    private static final int DIMENSION = 8;
+
+    private static SimpleMethodCodeElement candidate(String method, String name) {
+        return new SimpleMethodCodeElement(method, name + "()", "boolean", Collections.singleton(name));
+    }
+
+    private final CandidateRepository codeElements = new CandidateRepository(Arrays.asList(
+            candidate("Unit.getOwner()", "isNaval"), candidate("Unit.getOwner()", "getOwner"),
+            candidate("Unit.getOwner()", "isOffensiveUnit"), candidate("Unit.getOwner()", "getLocation"),
+            candidate("Unit.setOwner(Player)", "isNaval"), candidate("Unit.setOwner(Player)", "changeOwner")));
+
+    private static SemanticMatcher matcher(Aggregation aggregation, boolean principalComponentRemoval) {
+        SemanticMatcher matcher = new SemanticMatcher(CLASS_NAME, true, false, false, -1);
+        matcher.setAggregation(aggregation);
+        matcher.setPrincipalComponentRemoval(principalComponentRemoval);
+        return matcher;
+    }
+
+    /**
+     * Writes a store with a seeded random vector for every word of the code elements. Like GloVe
+     * vectors, they share a common direction, which the principal component removal drops.
+     */
+    private Path store(SyntheticGlove glove) throws IOException {
+        return glove.store(glove.words(matcher(Aggregation.SUM, false), null, codeElements), DIMENSION, 3);
+    }
+
+    @Test
+    public void testSifWeightsTheWordsOfTheCodeElements() throws IOException {
+        try (SyntheticGlove glove = new SyntheticGlove();
+             MappedGloveStore db = new MappedGloveStore(store(glove))) {
+            SemanticMatcher matcher = matcher(Aggregation.SIF, false);
+            CodeElementIndex index = new CodeElementIndex(matcher, db, codeElements);
+            CodeElementIndex sum = new CodeElementIndex(matcher(Aggregation.SUM, false), db, codeElements);
+            TFIDFModel model = new TFIDFModel();
+            model.add(CLASS_NAME, codeElements);
+
+            TokenDictionary dictionary = TokenDictionary.shared();
+            SimpleMethodCodeElement owner = candidate("Unit.getOwner()", "getOwner");
+            double[] expected = new double[DIMENSION];
+            for (int token : index.get(owner).tokenIds[0]) {
+                FloatBuffer row = db.row(dictionary.token(token));
+                if (matcher.isStopword(token) || row == null) continue;
+                double weight = SemanticMatcher.SIF_SMOOTHING / (SemanticMatcher.SIF_SMOOTHING + model.probability(token));
+                for (int i = 0; i != DIMENSION; i++) expected[i] += weight * row.get(i);
+            }
+            float[] actual = index.get(owner).vector;
+            for (int i = 0; i != DIMENSION; i++) assertEquals(expected[i], actual[i], 1e-4);
+            // Every word is more frequent than the smoothing, so all the weights are below 1.
+            assertTrue(index.get(owner).norm < sum.get(owner).norm);
+        }
+    }
+
+    @Test
+    public void testPrincipalComponentIsRemovedFromCodeElementsAndComments() throws IOException {
+        try (SyntheticGlove glove = new SyntheticGlove();
+             MappedGloveStore db = new MappedGloveStore(store(glove))) {
+            CodeElementIndex plain = new CodeElementIndex(matcher(Aggregation.SUM, false), db, codeElements);
+            SemanticMatcher matcher = matcher(Aggregation.SUM, true);
+            CodeElementIndex removed = new CodeElementIndex(matcher, db, codeElements);
+
+            List<SimpleMethodCodeElement> all = new ArrayList<>();
+            for (String method : codeElements.methods()) all.addAll(codeElements.forMethod(method));
+            float[][] vectors = new float[all.size()][];
+            for (int i = 0; i != vectors.length; i++) vectors[i] = plain.get(all.get(i)).vector;
+            float[] component = VectorKernel.principalComponent(vectors, CodeElementIndex.PRINCIPAL_COMPONENT_ITERATIONS);
+            assertNotNull(component);
+
+            for (SimpleMethodCodeElement codeElement : all) {
+                float[] before = plain.get(codeElement).vector;
+                float[] after = removed.get(codeElement).vector;
+                double projection = VectorKernel.dot(before, component);
+                for (int i = 0; i != DIMENSION; i++) assertEquals(before[i] - projection * component[i], after[i], 1e-4);
+                assertEquals(0, VectorKernel.dot(after, component), 1e-3);
+            }
+
+            // Comments are projected as well, so that the scores compare vectors of the same space.
+            Set<String> comment = new HashSet<>(Arrays.asList("naval", "owner"));
+            float[] plainComment = plain.commentVector(comment);
+            float[] commentVector = removed.commentVector(comment);
+            assertTrue(Math.abs(VectorKernel.dot(plainComment, component)) > 1);
+            assertEquals(0, VectorKernel.dot(commentVector, component), 1e-3);
+
+            CodeElementIndex.Group group = removed.group("Unit.getOwner()");
+            double[] scores = matcher.scoreCandidates(commentVector, group);
+            for (int i = 0; i != scores.length; i++) {
+                float[] candidate = removed.get(group.candidates.get(i)).vector;
+                double cosine = VectorKernel.dot(commentVector, candidate)
+                        / (VectorKernel.norm(commentVector) * VectorKernel.norm(candidate));
+                assertEquals(1 - cosine, scores[i], 1e-4);
+            }
+        }
+    }
+}
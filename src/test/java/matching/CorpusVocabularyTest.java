@@ -0,0 +1,50 @@
+package matching;
+
+import org.junit.Test;
+import util.CandidateRepository;
+import util.MappedGloveStore;
+import util.SimpleMethodCodeElement;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CorpusVocabularyTest {
+
+    @Test
+    public void testTrimmedStoreKeepsTheVectorsOfTheCollectedWords() throws IOException {
+        try (SyntheticGlove glove = new SyntheticGlove()) {
+            CandidateRepository codeElements = new CandidateRepository(Arrays.asList(
+                    new SimpleMethodCodeElement("Foo.bar()", "isNaval()", "boolean", Collections.singleton("isNaval")),
+                    new SimpleMethodCodeElement("Foo.bar()", "getOwner()", "Player", Collections.singleton("getOwner"))));
+
+            Set<String> words = glove.words(new SemanticMatcher("org.Foo", true, true, false, -1), null, codeElements);
+            assertTrue(words.contains("naval"));
+            assertTrue(words.contains("owner"));
+
+            // Every collected word has a vector, and so do two words of no class.
+            List<String> allWords = new ArrayList<>(words);
+            allWords.add("colony");
+            allWords.add("tile");
+            Path full = glove.store(allWords, 3, 0);
+            Path trimmed = glove.dir.resolve("glove-trimmed.bin");
+            MappedGloveStore.convert(glove.text(), trimmed, MappedGloveStore.Encoding.FLOAT32, words);
+
+            try (MappedGloveStore fullDb = new MappedGloveStore(full);
+                 MappedGloveStore trimmedDb = new MappedGloveStore(trimmed)) {
+                assertEquals(words.size(), trimmedDb.size());
+                assertFalse(trimmedDb.contains("colony"));
+                for (String word : words) {
+                    FloatBuffer expected = fullDb.row(word);
+                    FloatBuffer actual = trimmedDb.row(word);
+                    assertEquals(expected.remaining(), actual.remaining());
+                    for (int i = 0; i != expected.remaining(); i++)
+                        assertEquals(expected.get(i), actual.get(i), 0f);
+                }
+            }
+        }
+    }
+}
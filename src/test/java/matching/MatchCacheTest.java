@@ -0,0 +1,127 @@
+package matching;
+
+import org.junit.Test;
+import util.SimpleMethodCodeElement;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class MatchCacheTest {
+
+    private static SimpleMethodCodeElement candidate(String name) {
+        return new SimpleMethodCodeElement("foo()", name + "()", "boolean",
+                new HashSet<>(Collections.singletonList(name)));
+    }
+
+    private final List<SimpleMethodCodeElement> candidates =
+            Arrays.asList(candidate("isEmpty"), candidate("isNull"), candidate("hasNext"));
+
+    private SemanticMatch match() {
+        SemanticMatch match = new SemanticMatch(null, "foo", "be empty", -1);
+        LinkedHashMap<SimpleMethodCodeElement, Double> retained = new LinkedHashMap<>();
+        retained.put(candidates.get(0), 0.1);
+        retained.put(candidates.get(2), 0.4);
+        match.setCandidates(retained);
+        return match;
+    }
+
+    @Test
+    public void testKeyIgnoresCandidatesOrder() {
+        List<SimpleMethodCodeElement> reversed = new ArrayList<>(candidates);
+        Collections.reverse(reversed);
+        assertEquals(MatchCache.key("config", "if empty", candidates).digest,
+                MatchCache.key("config", "if empty", reversed).digest);
+        assertEquals(false, MatchCache.key("config", "if empty", candidates).digest.equals(
+                MatchCache.key("config", "if null", candidates).digest));
+        assertEquals(false, MatchCache.key("config", "if empty", candidates).digest.equals(
+                MatchCache.key("other config", "if empty", candidates).digest));
+    }
+
+    @Test
+    public void testResultsSurviveSaveAndLoad() throws IOException {
+        MatchCache cache = new MatchCache();
+        cache.put(MatchCache.key("config", "if empty", candidates), match());
+        assertNull(cache.get(MatchCache.key("config", "if null", candidates), null, -1));
+
+        Path file = Files.createTempFile("matches", ".bin");
+        try {
+            cache.save(file);
+            MatchCache loaded = new MatchCache();
+            loaded.load(file);
+            assertEquals(1, loaded.size());
+
+            List<SimpleMethodCodeElement> shuffled = new ArrayList<>(candidates);
+            Collections.swap(shuffled, 0, 2);
+            SemanticMatch match = loaded.get(MatchCache.key("config", "if empty", shuffled), null, -1);
+            assertNotNull(match);
+            assertEquals("foo", match.getMethod());
+            assertEquals("be empty", match.parsedComment);
+            assertEquals(new ArrayList<>(match().getCandidates().entrySet()),
+                    new ArrayList<>(match.getCandidates().entrySet()));
+            assertEquals(1, loaded.hits());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testOnlyUsedResultsAreSaved() throws IOException {
+        MatchCache cache = new MatchCache();
+        cache.put(MatchCache.key("config", "if empty", candidates), match());
+        cache.put(MatchCache.key("config", "if null", candidates), match());
+        Path file = Files.createTempFile("matches", ".bin");
+        try {
+            cache.save(file);
+            MatchCache nextRun = new MatchCache();
+            nextRun.load(file);
+            assertNotNull(nextRun.get(MatchCache.key("config", "if null", candidates), null, -1));
+            nextRun.save(file);
+
+            MatchCache lastRun = new MatchCache();
+            lastRun.load(file);
+            assertEquals(1, lastRun.size());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRetainedCandidatesMustBeCandidatesOfTheKey() {
+        MatchCache cache = new MatchCache();
+        cache.put(MatchCache.key("config", "if empty", candidates.subList(1, 3)), match());
+    }
+
+    @Test
+    public void testManyRetainedCandidatesSurviveSaveAndLoad() throws IOException {
+        List<SimpleMethodCodeElement> many = new ArrayList<>();
+        LinkedHashMap<SimpleMethodCodeElement, Double> retained = new LinkedHashMap<>();
+        for (int i = 0; i != Short.MAX_VALUE + 10; i++) {
+            SimpleMethodCodeElement candidate = candidate("is" + i);
+            many.add(candidate);
+            retained.put(candidate, (double) i);
+        }
+        SemanticMatch match = new SemanticMatch(null, "foo", "be empty", -1);
+        match.setCandidates(retained);
+        MatchCache cache = new MatchCache();
+        cache.put(MatchCache.key("config", "if empty", many), match);
+
+        Path file = Files.createTempFile("matches", ".bin");
+        try {
+            cache.save(file);
+            MatchCache loaded = new MatchCache();
+            loaded.load(file);
+            SemanticMatch reloaded = loaded.get(MatchCache.key("config", "if empty", many), null, -1);
+            assertEquals(many.size(), reloaded.getCandidates().size());
+            assertEquals(Double.valueOf(Short.MAX_VALUE + 9),
+                    reloaded.getCandidates().get(many.get(many.size() - 1)));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
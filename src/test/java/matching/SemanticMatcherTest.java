@@ -4,10 +4,10 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonStreamParser;
 import de.jungblut.glove.GloveRandomAccessReader;
-import de.jungblut.glove.impl.GloveBinaryRandomAccessReader;
-import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
-import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
 import org.junit.Test;
+import util.CandidateRepository;
+import util.MappedGloveStore;
+import util.Precision;
 import util.SimpleMethodCodeElement;
 import util.StatsUtil;
 
@@ -16,9 +16,16 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by arianna on 29/05/17.
@@ -27,7 +34,7 @@ public class SemanticMatcherTest {
 
     public void testVectorMatch(GloveRandomAccessReader db, String className, String goalOutputFile, String codeElementsFile)
             throws FileNotFoundException {
-        Set<SimpleMethodCodeElement> collectedMethods = new HashSet<>();
+        CandidateRepository collectedMethods = new CandidateRepository();
         // Ideal threshold for vector sum is 0.24
         SemanticMatcher semanticMatcher = new SemanticMatcher(
                 className, true, true, false, (float)-1);
@@ -56,7 +63,7 @@ public class SemanticMatcherTest {
 
     public void testConcSimMatch(GloveRandomAccessReader db, String className, String goalOutputFile, String codeElementsFile)
             throws FileNotFoundException {
-        Set<SimpleMethodCodeElement> collectedMethods = new HashSet<>();
+        CandidateRepository collectedMethods = new CandidateRepository();
         // Ideal threshold for conceptual similarity is 0.75
         ConceptualMatcher semanticMatcher = new ConceptualMatcher(
                 className, true, true, false, (float)-1);
@@ -84,8 +91,9 @@ public class SemanticMatcherTest {
     }
 
 
-    public void testWmdMatch(String className, String goalOutputFile, String codeElementsFile, WordVectors vectors) throws FileNotFoundException {
-        Set<SimpleMethodCodeElement> collectedMethods = new HashSet<>();
+    public void testWmdMatch(GloveRandomAccessReader db, String className, String goalOutputFile, String codeElementsFile)
+            throws FileNotFoundException {
+        CandidateRepository collectedMethods = new CandidateRepository();
         // Ideal threshold for WMD is 5.5
         WMDMatcher semanticMatcher = new WMDMatcher(
                 className, true, true, false, (float)-1);
@@ -103,33 +111,80 @@ public class SemanticMatcherTest {
         {
             collectedMethods.add(gson.fromJson(parser.next(), SimpleMethodCodeElement.class));
         }
-        semanticMatcher.runWmdMatch(file, collectedMethods, vectors);
+        semanticMatcher.runWmdMatch(db, file, collectedMethods);
         StatsUtil.computeStats(semanticMatcher);
     }
 
 
+    public void testPrecision(GloveRandomAccessReader db, String className, String goalOutputFile, String codeElementsFile)
+            throws FileNotFoundException {
+        CandidateRepository collectedMethods = new CandidateRepository();
+
+        // Load all the DocumentedMethods composing a class using its goal file
+        ClassLoader classLoader = getClass().getClassLoader();
+        File file = new File(classLoader.getResource(goalOutputFile).getFile());
+
+        Gson gson = new GsonBuilder().create();
+
+        JsonStreamParser parser = new JsonStreamParser(new FileReader(new File(classLoader.getResource(codeElementsFile).getFile())));
+        while(parser.hasNext())
+        {
+            collectedMethods.add(gson.fromJson(parser.next(), SimpleMethodCodeElement.class));
+        }
+
+        // Every reduced precision is compared with the full precision run of the same matcher.
+        try {
+            SemanticMatcher vectorMatcher = new SemanticMatcher(className, true, true, false, (float)-1);
+            vectorMatcher.setKeepMatches(true);
+            vectorMatcher.runVectorMatch(db, file, collectedMethods);
+            ConceptualMatcher conceptualMatcher = new ConceptualMatcher(className, true, true, false, (float)-1);
+            conceptualMatcher.setKeepMatches(true);
+            conceptualMatcher.runConceptualSim(db, file, collectedMethods);
+
+            for (Precision precision : new Precision[]{Precision.FLOAT16, Precision.INT8}) {
+                SemanticMatcher reducedVectorMatcher = new SemanticMatcher(className, true, true, false, (float)-1);
+                reducedVectorMatcher.setPrecision(precision);
+                reducedVectorMatcher.setKeepMatches(true);
+                reducedVectorMatcher.runVectorMatch(db, file, collectedMethods);
+                StatsUtil.computePrecisionStats(vectorMatcher, reducedVectorMatcher);
+
+                ConceptualMatcher reducedConceptualMatcher = new ConceptualMatcher(className, true, true, false, (float)-1);
+                reducedConceptualMatcher.setPrecision(precision);
+                reducedConceptualMatcher.setKeepMatches(true);
+                reducedConceptualMatcher.runConceptualSim(db, file, collectedMethods);
+                StatsUtil.computePrecisionStats(conceptualMatcher, reducedConceptualMatcher);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
     //TODO generalize the test cases.
     @Test
     public void testAll(){
         File file = new File("semanticStats.csv");
+        File precisionFile = new File("precisionStats.csv");
         try {
             Files.deleteIfExists(file.toPath());
+            Files.deleteIfExists(precisionFile.toPath());
         } catch (IOException e) {
             e.printStackTrace();
         }
 
-        // vectors databases are loaded only once
+        // the vectors database is loaded only once, and shared by all the matchers
         GloveRandomAccessReader gloveBinaryDb = setUpGloveBinaryDB();
-        WordVectors gloveVectors = setUpGloveTxtVectors();
 
         String goalOutput= "goals/freecol-0.11.6/net.sf.freecol.common.model.Unit_goal.json";
         String codeElements = "code-elements/net.sf.freecol.common.model.Unit_codeElements.json";
         String className = codeElements.substring(codeElements.indexOf("/")+1, codeElements.indexOf("_"));
 
         try {
+            // first, since it overwrites the result files of the matchers
+            testPrecision(gloveBinaryDb, className, goalOutput, codeElements);
             testVectorMatch(gloveBinaryDb, className, goalOutput, codeElements);
             testConcSimMatch(gloveBinaryDb, className, goalOutput, codeElements);
-            testWmdMatch(className, goalOutput, codeElements, gloveVectors);
+            testWmdMatch(gloveBinaryDb, className, goalOutput, codeElements);
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         }
@@ -139,33 +194,116 @@ public class SemanticMatcherTest {
         className = codeElements.substring(codeElements.indexOf("/")+1, codeElements.indexOf("_"));
 
         try {
+            // first, since it overwrites the result files of the matchers
+            testPrecision(gloveBinaryDb, className, goalOutput, codeElements);
             testVectorMatch(gloveBinaryDb, className, goalOutput, codeElements);
             testConcSimMatch(gloveBinaryDb, className, goalOutput, codeElements);
-            testWmdMatch(className, goalOutput, codeElements, gloveVectors);
+            testWmdMatch(gloveBinaryDb, className, goalOutput, codeElements);
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         }
+    }
 
+    @Test
+    public void testParallelMatchIsDeterministic() throws IOException {
+        String className = "org.jgrapht.Graph";
+        ClassLoader classLoader = getClass().getClassLoader();
+        File goalFile = new File(classLoader.getResource("goals/jgrapht/org.jgrapht.Graph_goal.json").getFile());
+        CandidateRepository codeElements = CandidateRepository.load(
+                new File(classLoader.getResource("code-elements/org.jgrapht.Graph_codeElements.json").getFile()));
 
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (SyntheticGlove glove = new SyntheticGlove()) {
+            Path store = glove.store(
+                    glove.words(new SemanticMatcher(className, true, true, false, -1), goalFile, codeElements), 50, 0);
+            Path sequentialDir = Files.createDirectory(glove.dir.resolve("sequential"));
+            Path parallelDir = Files.createDirectory(glove.dir.resolve("parallel"));
+            try (MappedGloveStore db = new MappedGloveStore(store)) {
+                assertParallelMatchIsSequential(
+                        new SemanticMatcher(className, true, true, false, -1),
+                        new SemanticMatcher(className, true, true, false, -1),
+                        sequentialDir, parallelDir, executor,
+                        matcher -> matcher.runVectorMatch(db, goalFile, codeElements));
+                assertParallelMatchIsSequential(
+                        new ConceptualMatcher(className, true, true, false, -1),
+                        new ConceptualMatcher(className, true, true, false, -1),
+                        sequentialDir, parallelDir, executor,
+                        matcher -> matcher.runConceptualSim(db, goalFile, codeElements));
+                // WMD also shares its documents among the tags, built the first time they're needed.
+                assertParallelMatchIsSequential(
+                        new WMDMatcher(className, true, true, false, -1),
+                        new WMDMatcher(className, true, true, false, -1),
+                        sequentialDir, parallelDir, executor,
+                        matcher -> matcher.runWmdMatch(db, goalFile, codeElements));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
-    private WordVectors setUpGloveTxtVectors() {
-        File gloveTxt = new File("/home/arianna/Scaricati/glove-master/target/glove.6B.300d.txt");
-        WordVectors gloveVectors = null;
-        try {
-            gloveVectors = WordVectorSerializer.loadTxtVectors(gloveTxt);
-        } catch (Exception e) {
-            e.printStackTrace();
+    @Test
+    public void testWordCharactersAreTheRegexOnes() {
+        for (String text : new String[] {"", "vertex", "isn't null!", "a_b-c d\u00e8", "  @x.y() == 0;", "\t\n"}) {
+            assertEquals(text.replaceAll("[^A-Za-z0-9!]", ""), SemanticMatcher.wordCharacters(text, false));
+            assertEquals(text.replaceAll("[^A-Za-z0-9! ]", ""), SemanticMatcher.wordCharacters(text, true));
+        }
+        String word = "vertex";
+        assertSame(word, SemanticMatcher.wordCharacters(word, false));
+    }
+
+    /** A run of a matcher on the goal file of a class. */
+    private interface MatcherRun<M extends SemanticMatcher> {
+        void run(M matcher) throws IOException;
+    }
+
+    /**
+     * Runs a matcher sequentially and another one, with the same configuration, through the
+     * executor, and checks that they find the same matches.
+     */
+    private static <M extends SemanticMatcher> void assertParallelMatchIsSequential(
+            M sequential, M parallel, Path sequentialDir, Path parallelDir, ExecutorService executor,
+            MatcherRun<M> run) throws IOException {
+        sequential.setOutputDirectory(sequentialDir);
+        sequential.setKeepMatches(true);
+        run.run(sequential);
+
+        parallel.setOutputDirectory(parallelDir);
+        parallel.setExecutor(executor);
+        parallel.setKeepMatches(true);
+        run.run(parallel);
+
+        assertTrue(!sequential.semanticMatches.isEmpty());
+        assertEquals(sequential.semanticMatches.size(), sequential.matchCounts()[0]
+                + sequential.matchCounts()[1] + sequential.matchCounts()[2]);
+        assertEquals(describe(sequential), describe(parallel));
+        assertArrayEquals(sequential.matchCounts(), parallel.matchCounts());
+    }
+
+    /** @return the matches of a matcher, with their candidates in order, sorted */
+    private static List<String> describe(SemanticMatcher matcher) {
+        List<String> matches = new ArrayList<>();
+        for (SemanticMatch match : matcher.semanticMatches) {
+            StringBuilder description = new StringBuilder(match.getMethod())
+                    .append('\t').append(match.getTag().getComment())
+                    .append('\t').append(match.parsedComment);
+            for (Map.Entry<SimpleMethodCodeElement, Double> candidate : match.getCandidates().entrySet())
+                description.append('\t').append(candidate.getKey().getCodeElementName())
+                        .append('=').append(candidate.getValue());
+            matches.add(description.toString());
         }
-        return gloveVectors;
+        Collections.sort(matches);
+        return matches;
     }
 
     private GloveRandomAccessReader setUpGloveBinaryDB() {
         GloveRandomAccessReader gloveBinaryDb = null;
         try {
-            gloveBinaryDb =
-                    new GloveBinaryRandomAccessReader(
-                            Paths.get("/home/arianna/Scaricati/glove-master/target/glove-binary"));
+            // The mapped store is built once from the text vectors, then reused by every run.
+            Path mappedStore = Paths.get("/home/arianna/Scaricati/glove-master/target/glove-mapped.bin");
+            if (!Files.exists(mappedStore))
+                MappedGloveStore.convert(
+                        Paths.get("/home/arianna/Scaricati/glove-master/target/glove.6B.300d.txt"), mappedStore);
+            gloveBinaryDb = new MappedGloveStore(mappedStore);
         } catch (IOException e) {
             e.printStackTrace();
         }
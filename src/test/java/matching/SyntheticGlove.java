@@ -0,0 +1,81 @@
+package matching;
+
+import util.CandidateRepository;
+import util.MappedGloveStore;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * GloVe vectors for the tests: seeded random vectors for the words of a class, quick to build and
+ * enough to tell the candidates of a tag apart. Everything is written in a temporary directory,
+ * deleted on close.
+ */
+final class SyntheticGlove implements Closeable {
+
+    final Path dir;
+
+    SyntheticGlove() throws IOException {
+        dir = Files.createTempDirectory("synthetic-glove");
+    }
+
+    /**
+     * Collects the words the matchers look up for a class.
+     *
+     * @param matcher the matcher whose parsing is used
+     * @param goalFile the goal file of the class, null if the class has no documented method
+     * @param codeElements the code elements of the class
+     * @return the words of the comments and of the code elements
+     * @throws IOException if the goal file couldn't be read
+     */
+    Set<String> words(SemanticMatcher matcher, File goalFile, CandidateRepository codeElements) throws IOException {
+        if (goalFile == null)
+            goalFile = Files.write(dir.resolve("goal.json"), Collections.singletonList("[]"), StandardCharsets.UTF_8).toFile();
+        CorpusVocabulary vocabulary = new CorpusVocabulary();
+        vocabulary.add(matcher, goalFile, codeElements);
+        return vocabulary.words();
+    }
+
+    /** @return the text file of the vectors, written by {@link #store} */
+    Path text() {
+        return dir.resolve("glove.txt");
+    }
+
+    /**
+     * Writes a vector for every word, the same ones for the same words, and converts them to a
+     * mapped store.
+     *
+     * @param words the words having a vector
+     * @param dimension the dimension of the vectors
+     * @param offset added to the first component of every vector: like GloVe vectors, they then
+     *     share a common direction
+     * @return the mapped store
+     * @throws IOException if the files couldn't be written
+     */
+    Path store(Collection<String> words, int dimension, float offset) throws IOException {
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<>();
+        for (String word : new TreeSet<>(words)) {
+            StringBuilder line = new StringBuilder(word);
+            for (int i = 0; i != dimension; i++) line.append(' ').append((float) random.nextGaussian() + (i == 0 ? offset : 0));
+            lines.add(line.toString());
+        }
+        Files.write(text(), lines, StandardCharsets.UTF_8);
+        Path store = dir.resolve("glove.bin");
+        MappedGloveStore.convert(text(), store);
+        return store;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
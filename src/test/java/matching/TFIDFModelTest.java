@@ -0,0 +1,102 @@
+package matching;
+
+import org.junit.Test;
+import util.CandidateRepository;
+import util.SimpleMethodCodeElement;
+import util.TokenDictionary;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class TFIDFModelTest {
+
+    private static SimpleMethodCodeElement candidate(String method, String name) {
+        return new SimpleMethodCodeElement(method, name + "()", "boolean",
+                new HashSet<>(Collections.singletonList(name)));
+    }
+
+    private static CandidateRepository codeElements() {
+        // isEmpty is a candidate of both methods, but it's a single document.
+        return new CandidateRepository(Arrays.asList(
+                candidate("foo()", "isEmpty"), candidate("bar()", "isEmpty"),
+                candidate("foo()", "isNull"), candidate("foo()", "hasNext"), candidate("foo()", "size")));
+    }
+
+    @Test
+    public void testDocumentFrequencies() {
+        TokenDictionary dictionary = new TokenDictionary();
+        TFIDFModel model = new TFIDFModel(dictionary);
+        assertEquals(true, model.add("Foo", codeElements()));
+        assertEquals(false, model.add("Foo", codeElements()));
+
+        assertEquals(4, model.documents());
+        assertEquals(2, model.documentFrequency(dictionary.id("is")));
+        assertEquals(1, model.documentFrequency(dictionary.id("next")));
+        assertEquals(true, model.isCommon(dictionary.id("is")));
+        assertEquals(false, model.isCommon(dictionary.id("size")));
+        assertEquals(Math.log(5.0 / 3) + 1, model.idf(dictionary.id("is")), 1e-12);
+        assertEquals(true, model.idf(dictionary.id("next")) > model.idf(dictionary.id("is")));
+        // is, empty, is, null, has, next, size
+        assertEquals(2.0 / 7, model.probability(dictionary.id("is")), 1e-12);
+    }
+
+    @Test
+    public void testModelIsIncrementalAndSurvivesSaveAndLoad() throws IOException {
+        TokenDictionary dictionary = new TokenDictionary();
+        TFIDFModel model = new TFIDFModel(dictionary);
+        model.add("Foo", codeElements());
+        String fingerprint = model.fingerprint();
+
+        Path file = Files.createTempFile("tfidf", ".bin");
+        try {
+            model.save(file);
+            TFIDFModel loaded = new TFIDFModel(dictionary);
+            loaded.load(file);
+            assertEquals(fingerprint, loaded.fingerprint());
+            assertEquals(false, loaded.add("Foo", codeElements()));
+
+            loaded.add("Bar", new CandidateRepository(Collections.singletonList(candidate("baz()", "isValid"))));
+            assertEquals(5, loaded.documents());
+            assertEquals(3, loaded.documentFrequency(dictionary.id("is")));
+            assertEquals(false, fingerprint.equals(loaded.fingerprint()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testChangedClassReplacesItsDocuments() throws IOException {
+        TokenDictionary dictionary = new TokenDictionary();
+        CandidateRepository changed = new CandidateRepository(Arrays.asList(
+                candidate("foo()", "isEmpty"), candidate("foo()", "size"), candidate("foo()", "getFirst")));
+        TFIDFModel expected = new TFIDFModel(dictionary);
+        expected.add("Foo", changed);
+
+        TFIDFModel model = new TFIDFModel(dictionary);
+        model.add("Foo", codeElements());
+        Path file = Files.createTempFile("tfidf", ".bin");
+        try {
+            model.save(file);
+            TFIDFModel loaded = new TFIDFModel(dictionary);
+            loaded.load(file);
+            assertEquals(true, loaded.add("Foo", changed));
+
+            assertEquals(3, loaded.documents());
+            assertEquals(1, loaded.documentFrequency(dictionary.id("is")));
+            assertEquals(0, loaded.documentFrequency(dictionary.id("next")));
+            assertEquals(1, loaded.documentFrequency(dictionary.id("first")));
+            assertEquals(expected.fingerprint(), loaded.fingerprint());
+
+            // Loading the saved model again brings the old documents of the class back.
+            loaded.load(file);
+            assertEquals(model.fingerprint(), loaded.fingerprint());
+            assertEquals(2, loaded.documentFrequency(dictionary.id("is")));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
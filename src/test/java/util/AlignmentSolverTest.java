@@ -0,0 +1,36 @@
+package util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AlignmentSolverTest {
+
+    @Test
+    public void testGreedyChoiceIsNotOptimal() {
+        // Aligning the first row to its best column (0.9) would leave 0.1 to the second one.
+        double[] similarities = {
+                0.9, 0.8,
+                0.7, 0.1};
+        assertEquals(1.5, AlignmentSolver.maxAlignment(similarities, 2, 2), 1e-9);
+    }
+
+    @Test
+    public void testRectangularMatrices() {
+        double[] wide = {
+                0.2, 0.6, 0.3,
+                0.5, 0.9, 0.4};
+        assertEquals(1.2, AlignmentSolver.maxAlignment(wide, 2, 3), 1e-9);
+
+        double[] tall = {
+                0.2, 0.5,
+                0.6, 0.9,
+                0.3, 0.4};
+        assertEquals(1.2, AlignmentSolver.maxAlignment(tall, 3, 2), 1e-9);
+    }
+
+    @Test
+    public void testEmptyMatrix() {
+        assertEquals(0, AlignmentSolver.maxAlignment(new double[0], 0, 4), 0);
+    }
+}
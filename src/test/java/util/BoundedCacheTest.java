@@ -0,0 +1,51 @@
+package util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void testLookupsAreCounted() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(10);
+        assertNull(cache.get("one"));
+        cache.put("one", 1);
+        assertEquals(Integer.valueOf(1), cache.get("one"));
+        assertEquals(Integer.valueOf(1), cache.get("one"));
+        assertTrue(cache.containsKey("one"));
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.hits());
+        assertEquals(0, cache.misses());
+    }
+
+    @Test
+    public void testFullCacheDropsATenth() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(20);
+        for (int i = 0; i != 20; i++) cache.put(i, i);
+        assertEquals(20, cache.size());
+        // Replacing a result doesn't need room.
+        cache.put(5, 50);
+        assertEquals(20, cache.size());
+
+        cache.put(20, 20);
+        assertEquals(19, cache.size());
+        assertEquals(Integer.valueOf(20), cache.get(20));
+    }
+
+    @Test
+    public void testPutIfRoomNeverEvicts() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(2);
+        assertTrue(cache.putIfRoom(1, 1));
+        assertTrue(cache.putIfRoom(1, 10));
+        assertEquals(Integer.valueOf(1), cache.get(1));
+        assertTrue(cache.putIfRoom(2, 2));
+        assertFalse(cache.putIfRoom(3, 3));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.snapshot().size());
+    }
+}
@@ -0,0 +1,49 @@
+package util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class CandidateRepositoryTest {
+
+    @Test
+    public void testLoadGroupsByMethod() throws IOException {
+        Path json = Files.createTempFile("codeElements", ".json");
+        Files.write(json, Arrays.asList(
+                "{\"forMethod\":\"Unit.getOwner()\",\"codeElementName\":\"isNaval()\",\"returnType\":\"boolean\",\"codeElementIds\":[\"isNaval\"]}",
+                "{\"forMethod\":\"Unit.getOwner()\",\"codeElementName\":\"isOffensiveUnit()\",\"returnType\":\"boolean\",\"codeElementIds\":[\"isOffensiveUnit\"]}",
+                "{\"forMethod\":\"Unit.setOwner(Player)\",\"codeElementName\":\"isNaval()\",\"returnType\":\"boolean\",\"codeElementIds\":[\"isNaval\"]}"),
+                StandardCharsets.UTF_8);
+        try {
+            CandidateRepository repository = CandidateRepository.load(json.toFile());
+            assertEquals(3, repository.size());
+            assertEquals(2, repository.forMethod("Unit.getOwner()").size());
+            assertEquals(1, repository.forMethod("Unit.setOwner(Player)").size());
+            assertTrue(repository.forMethod("Unit.getLocation()").isEmpty());
+        } finally {
+            Files.delete(json);
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdates() {
+        SimpleMethodCodeElement naval = new SimpleMethodCodeElement(
+                "Unit.getOwner()", "isNaval()", "boolean", Collections.singleton("isNaval"));
+        CandidateRepository repository = new CandidateRepository();
+        assertTrue(repository.add(naval));
+        assertFalse(repository.add(naval));
+        assertTrue(repository.methods().contains("Unit.getOwner()"));
+
+        assertTrue(repository.remove(naval));
+        assertFalse(repository.remove(naval));
+        assertTrue(repository.methods().isEmpty());
+        assertEquals(0, repository.size());
+    }
+}
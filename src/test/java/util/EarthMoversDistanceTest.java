@@ -0,0 +1,52 @@
+package util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class EarthMoversDistanceTest {
+
+    @Test
+    public void testMassIsSplitAcrossDestinations() {
+        // Half of the first source goes to the far destination: the near one can only take 0.5.
+        double[] supply = {0.75, 0.25};
+        double[] demand = {0.5, 0.5};
+        double[] cost = {
+                1, 3,
+                2, 1};
+        assertEquals(0.5 * 1 + 0.25 * 3 + 0.25 * 1, EarthMoversDistance.distance(supply, demand, cost), 1e-9);
+    }
+
+    @Test
+    public void testFlowIsReroutedWhenCheaper() {
+        // The greedy choice of the cheapest cell (0 -> 0) is wrong: the second source can only go there.
+        double[] supply = {0.5, 0.5};
+        double[] demand = {0.5, 0.5};
+        double[] cost = {
+                1, 2,
+                1, 100};
+        assertEquals(0.5 * 2 + 0.5 * 1, EarthMoversDistance.distance(supply, demand, cost), 1e-9);
+    }
+
+    @Test
+    public void testSameResultOfOptimalAssignment() {
+        // With uniform masses of the same size, the EMD is an optimal assignment.
+        Random random = new Random(5);
+        for (int run = 0; run < 50; run++) {
+            int n = 1 + random.nextInt(8);
+            double[] mass = new double[n];
+            Arrays.fill(mass, 1.0 / n);
+            double[] cost = new double[n * n];
+            double[] similarities = new double[n * n];
+            for (int i = 0; i != cost.length; i++) {
+                cost[i] = random.nextDouble();
+                similarities[i] = -cost[i];
+            }
+            assertEquals(-AlignmentSolver.maxAlignment(similarities, n, n) / n,
+                    EarthMoversDistance.distance(mass, mass, cost), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.*;
+
+public class GoalFileReaderTest {
+
+    private static Path goalFile(String content) throws IOException {
+        Path file = Files.createTempFile("goal", ".json");
+        Files.write(file, Collections.singletonList(content), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    public void testEmptyGoalFile() throws IOException {
+        Path file = goalFile("[ ]");
+        try (GoalFileReader reader = new GoalFileReader(file.toFile())) {
+            assertFalse(reader.hasNext());
+            assertFalse(reader.hasNext());
+            try {
+                reader.next();
+                fail("next() past the end");
+            } catch (NoSuchElementException e) {
+                // expected
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testGoalFileMustBeAnArray() throws IOException {
+        Path file = goalFile("{\"signature\": \"foo()\"}");
+        try {
+            new GoalFileReader(file.toFile()).close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testMethodsAreReadOnDemand() throws IOException {
+        // Opening reads only the start of the array: a truncated file fails when it's reached.
+        Path file = goalFile("[");
+        try (GoalFileReader reader = new GoalFileReader(file.toFile())) {
+            try {
+                reader.hasNext();
+                fail("hasNext() at the truncation");
+            } catch (UncheckedIOException e) {
+                // expected
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testClosedReaderHasNoMethods() throws IOException {
+        Path file = goalFile("[ ]");
+        try {
+            GoalFileReader reader = new GoalFileReader(file.toFile());
+            reader.close();
+            assertFalse(reader.hasNext());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class IdentifierTokenizerTest {
+
+    @Test
+    public void testCamelCase() {
+        assertArrayEquals(new String[] {"is", "Empty"}, IdentifierTokenizer.split("isEmpty"));
+        assertArrayEquals(new String[] {"Array", "List"}, IdentifierTokenizer.split("ArrayList"));
+        assertArrayEquals(new String[] {"size"}, IdentifierTokenizer.split("size"));
+        assertArrayEquals(new String[0], IdentifierTokenizer.split(""));
+    }
+
+    @Test
+    public void testAcronymsAndDigits() {
+        assertArrayEquals(new String[] {"get", "URL", "2", "Path"}, IdentifierTokenizer.split("getURL2Path"));
+        assertArrayEquals(new String[] {"HTML", "Parser"}, IdentifierTokenizer.split("HTMLParser"));
+        assertArrayEquals(new String[] {"to", "URL"}, IdentifierTokenizer.split("toURL"));
+        assertArrayEquals(new String[] {"base", "64"}, IdentifierTokenizer.split("base64"));
+    }
+
+    @Test
+    public void testPluralAcronyms() {
+        assertArrayEquals(new String[] {"URLs"}, IdentifierTokenizer.split("URLs"));
+        assertArrayEquals(new String[] {"get", "IDs"}, IdentifierTokenizer.split("getIDs"));
+        assertArrayEquals(new String[] {"get", "IDs", "For", "Name"}, IdentifierTokenizer.split("getIDsForName"));
+        assertArrayEquals(new String[] {"URLs", "2"}, IdentifierTokenizer.split("URLs2"));
+        assertArrayEquals(new String[] {"all", "URLs"}, IdentifierTokenizer.split("all_URLs"));
+    }
+
+    @Test
+    public void testSeparators() {
+        assertArrayEquals(new String[] {"MAX", "VALUE"}, IdentifierTokenizer.split("MAX_VALUE"));
+        assertArrayEquals(new String[] {"this", "0"}, IdentifierTokenizer.split("this$0"));
+        assertArrayEquals(new String[] {"get"}, IdentifierTokenizer.split("_get_"));
+    }
+
+    @Test
+    public void testBufferIsReused() {
+        IdentifierTokenizer tokenizer = new IdentifierTokenizer();
+        assertEquals(20, tokenizer.tokenize(String.join("", Collections.nCopies(20, "Word"))));
+        assertEquals(2, tokenizer.tokenize("getX"));
+        assertEquals("X", tokenizer.token(1));
+        assertEquals(3, tokenizer.start(1));
+        assertEquals(4, tokenizer.end(1));
+    }
+
+    @Test
+    public void testWhitespace() {
+        String normalized = "if x is null";
+        assertSame(normalized, IdentifierTokenizer.collapseWhitespace(normalized));
+        assertEquals(normalized, IdentifierTokenizer.collapseWhitespace("  if x\t\tis \n null "));
+        assertEquals("", IdentifierTokenizer.collapseWhitespace(" \t "));
+        assertEquals("a b c", IdentifierTokenizer.joinWords(Arrays.asList("a", "", "b ", "c")));
+    }
+}
@@ -0,0 +1,50 @@
+package util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class IntCounterTest {
+
+    @Test
+    public void testCounts() {
+        IntCounter counter = new IntCounter();
+        counter.add(3);
+        counter.add(0);
+        assertEquals(2, counter.add(3));
+        assertEquals(5, counter.add(12, 5));
+
+        assertEquals(2, counter.get(3));
+        assertEquals(1, counter.get(0));
+        assertEquals(0, counter.get(4));
+        assertEquals(0, counter.get(-1));
+        assertEquals(3, counter.size());
+        assertEquals(8, counter.total());
+
+        int[] keys = counter.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(new int[] {0, 3, 12}, keys);
+    }
+
+    @Test
+    public void testSameCountsOfAMapWhileGrowing() {
+        IntCounter counter = new IntCounter(2);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i != 20_000; i++) {
+            int key = random.nextInt(3000) * 31;
+            counter.add(key);
+            expected.merge(key, 1, Integer::sum);
+        }
+
+        assertEquals(expected.size(), counter.size());
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet())
+            assertEquals((int) entry.getValue(), counter.get(entry.getKey()));
+    }
+}
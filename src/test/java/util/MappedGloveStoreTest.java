@@ -0,0 +1,129 @@
+package util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.DataOutputStream;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class MappedGloveStoreTest {
+
+    @Test
+    public void testConvertAndLookup() throws IOException {
+        Path txt = Files.createTempFile("glove", ".txt");
+        Path store = Files.createTempFile("glove", ".bin");
+        Files.write(txt, Arrays.asList(
+                "owner 0.5 -1.0 2.25",
+                "unit 1.0 0.0 -0.5",
+                "null 0.125 0.25 0.375"), StandardCharsets.UTF_8);
+        MappedGloveStore.convert(txt, store);
+
+        try (MappedGloveStore db = new MappedGloveStore(store)) {
+            assertEquals(3, db.dimension());
+            assertEquals(3, db.size());
+            assertTrue(db.contains("unit"));
+            assertFalse(db.contains("colony"));
+            assertNull(db.get("colony"));
+            assertEquals(-1, db.indexOf("colony"));
+
+            FloatBuffer unit = db.row("unit");
+            assertEquals(3, unit.remaining());
+            assertEquals(1.0f, unit.get(0), 0f);
+            assertEquals(-0.5f, unit.get(2), 0f);
+
+            FloatBuffer nullRow = db.row(db.indexOf("null"));
+            assertEquals(0.375f, nullRow.get(2), 0f);
+        } finally {
+            Files.delete(txt);
+            Files.delete(store);
+        }
+    }
+
+    @Test
+    public void testQuantizedAndTrimmedStore() throws IOException {
+        Path txt = Files.createTempFile("glove", ".txt");
+        Path store = Files.createTempFile("glove", ".bin");
+        Files.write(txt, Arrays.asList(
+                "owner 0.5 -1.0 2.25",
+                "unit 1.0 0.0 -0.5",
+                "null 0.125 0.25 0.375"), StandardCharsets.UTF_8);
+        MappedGloveStore.convert(txt, store, MappedGloveStore.Encoding.INT8,
+                new HashSet<>(Arrays.asList("unit", "owner", "colony")));
+
+        try (MappedGloveStore db = new MappedGloveStore(store)) {
+            assertEquals(MappedGloveStore.Encoding.INT8, db.encoding());
+            assertEquals(2, db.size());
+            assertFalse(db.contains("null"));
+            assertFalse(db.contains("colony"));
+
+            FloatBuffer owner = db.row("owner");
+            assertEquals(3, owner.remaining());
+            // Within half a quantization step, i.e. 2.25 / 127 / 2
+            assertEquals(0.5f, owner.get(0), 0.009f);
+            assertEquals(-1.0f, owner.get(1), 0.009f);
+            assertEquals(2.25f, owner.get(2), 0.009f);
+
+            float[] sum = new float[3];
+            db.addRow(db.indexOf("unit"), sum);
+            db.addRow(db.indexOf("unit"), sum);
+            assertEquals(2.0f, sum[0], 0.01f);
+        } finally {
+            Files.delete(txt);
+            Files.delete(store);
+        }
+    }
+
+    @Test
+    public void testManyWords() throws IOException {
+        Path txt = Files.createTempFile("glove", ".txt");
+        Path store = Files.createTempFile("glove", ".bin");
+        String[] lines = new String[5000];
+        for (int i = 0; i != lines.length; i++) lines[i] = "word" + i + " " + i + " " + (-i);
+        Files.write(txt, Arrays.asList(lines), StandardCharsets.UTF_8);
+        MappedGloveStore.convert(txt, store);
+
+        try (MappedGloveStore db = new MappedGloveStore(store)) {
+            for (int i = 0; i != lines.length; i++) {
+                assertEquals(i, db.indexOf("word" + i));
+                assertEquals(-i, db.row(i).get(1), 0f);
+            }
+            assertEquals(-1, db.indexOf("word5000"));
+        } finally {
+            Files.delete(txt);
+            Files.delete(store);
+        }
+    }
+
+    @Test
+    public void testVersion1Store() throws IOException {
+        Path store = Files.createTempFile("glove", ".bin");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(store))) {
+            out.writeInt(MappedGloveStore.MAGIC);
+            out.writeInt(1);
+            out.writeInt(2);
+            out.writeInt(2);
+            for (String word : new String[]{"unit", "owner"}) {
+                out.writeShort(word.length());
+                out.writeBytes(word);
+            }
+            // 16 + 6 + 7 bytes, aligned to 32
+            for (int i = 0; i != 3; i++) out.writeByte(0);
+            for (float value : new float[]{1, 2, 3, 4}) out.writeFloat(value);
+        }
+
+        try (MappedGloveStore db = new MappedGloveStore(store)) {
+            assertEquals(2, db.size());
+            assertEquals(3f, db.row("owner").get(0), 0f);
+            assertEquals(2.0, db.get("unit").get(1), 0);
+        } finally {
+            Files.delete(store);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package util;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import matching.SemanticMatch;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MatchWriterTest {
+
+    private static SemanticMatch match(String method, String parsedComment) {
+        return new SemanticMatch(null, method, parsedComment, -1);
+    }
+
+    @Test
+    public void testIndexLocatesEveryMatchSortedByMethod() throws IOException {
+        Path dir = Files.createTempDirectory("matches");
+        Path result = dir.resolve("semantic_Foo");
+        Path index = dir.resolve("semantic_Foo.index");
+        try {
+            try (MatchWriter writer = new MatchWriter(result, false)) {
+                writer.write(match("foo()", "be empty"));
+                writer.write(match("bar()", "be null"));
+                writer.write(match("foo()", "be valid"));
+            }
+
+            byte[] content = Files.readAllBytes(result);
+            List<String> lines = Files.readAllLines(index, StandardCharsets.UTF_8);
+            assertEquals(3, lines.size());
+            String[] expected = {"bar()\tbe null", "foo()\tbe empty", "foo()\tbe valid"};
+            long total = 0;
+            for (int i = 0; i != lines.size(); i++) {
+                String[] fields = lines.get(i).split("\t");
+                int offset = Integer.parseInt(fields[0]);
+                int length = Integer.parseInt(fields[1]);
+                JsonObject json = new JsonParser().parse(
+                        new String(content, offset, length, StandardCharsets.UTF_8)).getAsJsonObject();
+                assertEquals(fields[2], json.get("method").getAsString());
+                assertEquals(expected[i], fields[2] + "\t" + json.get("parsedComment").getAsString());
+                total += length;
+            }
+            assertEquals(content.length, total);
+        } finally {
+            Files.deleteIfExists(result);
+            Files.deleteIfExists(index);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testCompactMatchesAreOneLineEach() throws IOException {
+        Path result = Files.createTempFile("semantic", "");
+        Path index = result.resolveSibling(result.getFileName() + ".index");
+        try {
+            try (MatchWriter writer = new MatchWriter(result, true)) {
+                writer.write(match("foo()", "be empty"));
+                writer.write(match("bar()", "be null"));
+            }
+            List<String> lines = Files.readAllLines(result, StandardCharsets.UTF_8);
+            assertEquals(2, lines.size());
+            assertEquals("foo()", new JsonParser().parse(lines.get(0)).getAsJsonObject().get("method").getAsString());
+        } finally {
+            Files.deleteIfExists(result);
+            Files.deleteIfExists(index);
+        }
+    }
+
+    @Test
+    public void testPreviousResultsAreReplaced() throws IOException {
+        Path result = Files.createTempFile("semantic", "");
+        Path index = result.resolveSibling(result.getFileName() + ".index");
+        try {
+            try (MatchWriter writer = new MatchWriter(result, true)) {
+                writer.write(match("foo()", "be empty"));
+            }
+            assertTrue(Files.exists(index));
+
+            // No match, no files: the ones of the previous run are gone.
+            new MatchWriter(result, true).close();
+            assertFalse(Files.exists(result));
+            assertFalse(Files.exists(index));
+        } finally {
+            Files.deleteIfExists(result);
+            Files.deleteIfExists(index);
+        }
+    }
+}
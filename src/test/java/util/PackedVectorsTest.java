@@ -0,0 +1,52 @@
+package util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PackedVectorsTest {
+
+    @Test
+    public void testReducedPrecisionsStayClose() {
+        Random random = new Random(11);
+        float[][] vectors = new float[100][300];
+        for (float[] vector : vectors)
+            for (int i = 0; i != vector.length; i++) vector[i] = (float) random.nextGaussian();
+        vectors[7] = null;
+        float[] query = vectors[0].clone();
+        for (int i = 0; i != query.length; i++) query[i] += random.nextGaussian();
+        double queryNorm = VectorKernel.norm(query);
+
+        double[] exact = new PackedVectors(vectors).cosineDistances(query, queryNorm);
+        double[] half = new PackedVectors(vectors, Precision.FLOAT16).cosineDistances(query, queryNorm);
+        double[] bytes = new PackedVectors(vectors, Precision.INT8).cosineDistances(query, queryNorm);
+        for (int r = 0; r != vectors.length; r++) {
+            if (vectors[r] == null) {
+                assertTrue(Double.isNaN(half[r]) && Double.isNaN(bytes[r]));
+                continue;
+            }
+            assertEquals(exact[r], half[r], 1e-3);
+            assertEquals(exact[r], bytes[r], 2e-2);
+        }
+    }
+
+    @Test
+    public void testHalfPrecisionConversion() {
+        float[] values = {0f, 1f, -2.5f, 65504f, 1e-7f, 0.1f, 1e6f};
+        float[] expected = {0f, 1f, -2.5f, 65504f, 1.1920929e-7f, 0.099975586f, Float.POSITIVE_INFINITY};
+        for (int i = 0; i != values.length; i++)
+            assertEquals(expected[i], Precision.fromHalf(Precision.toHalf(values[i])), 0f);
+    }
+
+    @Test
+    public void testHalfPrecisionTiesRoundToEven() {
+        // Each value is halfway between two halves, the expected one is the even one.
+        float[] values = {1 + 0x1p-11f, 1 + 0x3p-11f, -(1 + 0x3p-11f), 0x3p-25f, 0x1p-25f, 65520f};
+        float[] expected = {1f, 1 + 0x1p-9f, -(1 + 0x1p-9f), 0x1p-23f, 0f, Float.POSITIVE_INFINITY};
+        for (int i = 0; i != values.length; i++)
+            assertEquals(expected[i], Precision.fromHalf(Precision.toHalf(values[i])), 0f);
+    }
+}
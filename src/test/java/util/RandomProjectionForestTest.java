@@ -0,0 +1,58 @@
+package util;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RandomProjectionForestTest {
+
+    private static float[][] randomVectors(Random random, int count, int dimension) {
+        float[][] vectors = new float[count][dimension];
+        for (float[] vector : vectors)
+            for (int i = 0; i != dimension; i++) vector[i] = (float) random.nextGaussian();
+        return vectors;
+    }
+
+    @Test
+    public void testIndexedVectorsFindThemselves() {
+        float[][] vectors = randomVectors(new Random(1), 1000, 16);
+        RandomProjectionForest forest = new RandomProjectionForest(vectors, 5, 10, 42);
+        for (int i = 0; i < vectors.length; i += 37)
+            assertEquals(i, forest.nearest(vectors[i], 1, 20)[0]);
+    }
+
+    @Test
+    public void testCandidatesAreDistinctAndPresent() {
+        float[][] vectors = randomVectors(new Random(2), 300, 8);
+        vectors[3] = null;
+        RandomProjectionForest forest = new RandomProjectionForest(vectors, 4, 8, 42);
+
+        int[] all = forest.candidates(vectors[0], 1000);
+        Set<Integer> distinct = new HashSet<>();
+        for (int item : all) distinct.add(item);
+        assertEquals(all.length, distinct.size());
+        assertEquals(299, all.length);
+        assertTrue(!distinct.contains(3));
+
+        assertTrue(forest.candidates(vectors[0], 30).length < 60);
+    }
+
+    @Test
+    public void testRecallGrowsWithCandidates() {
+        Random random = new Random(3);
+        float[][] vectors = randomVectors(random, 2000, 16);
+        float[][] queries = randomVectors(random, 50, 16);
+        RandomProjectionForest forest = new RandomProjectionForest(vectors, 10, 16, 42);
+
+        double low = forest.recall(queries, 5, 50);
+        double high = forest.recall(queries, 5, 500);
+        assertTrue(high >= low);
+        assertTrue(high > 0.8);
+        assertEquals(1.0, forest.recall(queries, 5, vectors.length), 0);
+    }
+}
@@ -0,0 +1,37 @@
+package util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TokenDictionaryTest {
+
+    @Test
+    public void testTokensAreInternedLowercased() {
+        TokenDictionary dictionary = new TokenDictionary();
+        int id = dictionary.intern("Null");
+
+        assertEquals(id, dictionary.intern("null"));
+        assertEquals(id, dictionary.id("NULL"));
+        assertEquals("null", dictionary.token(id));
+        assertEquals(-1, dictionary.id("empty"));
+        assertEquals(1, dictionary.size());
+    }
+
+    @Test
+    public void testIdsAreDense() {
+        TokenDictionary dictionary = new TokenDictionary();
+        String[] tokens = new String[3000];
+        for (int i = 0; i != tokens.length; i++) tokens[i] = "token" + i;
+
+        int[] ids = dictionary.intern(tokens);
+        int[] expected = new int[tokens.length];
+        for (int i = 0; i != expected.length; i++) expected[i] = i;
+        assertArrayEquals(expected, ids);
+        assertArrayEquals(ids, dictionary.intern(Arrays.asList(tokens)));
+        assertEquals("token2999", dictionary.token(2999));
+    }
+}
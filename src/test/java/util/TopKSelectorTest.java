@@ -0,0 +1,56 @@
+package util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TopKSelectorTest {
+
+    @Test
+    public void testDistancesKeepLowest() {
+        TopKSelector selector = new TopKSelector(3, false);
+        double[] distances = {0.7, 0.2, Double.NaN, 0.9, 0.1, 0.2, 0.5};
+        for (int i = 0; i != distances.length; i++) selector.offer(i, distances[i]);
+        selector.sort();
+
+        assertEquals(3, selector.size());
+        assertEquals(4, selector.id(0));
+        assertEquals(1, selector.id(1));
+        assertEquals(5, selector.id(2));
+        assertEquals(0.2, selector.score(2), 0);
+    }
+
+    @Test
+    public void testSimilaritiesKeepHighest() {
+        TopKSelector selector = new TopKSelector(2, true);
+        double[] similarities = {0.3, 0.8, 0.6, 0.1};
+        for (int i = 0; i != similarities.length; i++) selector.offer(i, similarities[i]);
+        selector.sort();
+
+        assertEquals(2, selector.size());
+        assertEquals(1, selector.id(0));
+        assertEquals(2, selector.id(1));
+    }
+
+    @Test
+    public void testSameResultOfFullSort() {
+        Random random = new Random(7);
+        TopKSelector selector = new TopKSelector(5, false);
+        for (int run = 0; run < 50; run++) {
+            double[] distances = new double[random.nextInt(40)];
+            for (int i = 0; i != distances.length; i++) distances[i] = random.nextInt(10) / 10.0;
+
+            selector.reset();
+            for (int i = 0; i != distances.length; i++) selector.offer(i, distances[i]);
+            selector.sort();
+
+            double[] expected = distances.clone();
+            Arrays.sort(expected);
+            assertEquals(Math.min(5, distances.length), selector.size());
+            for (int i = 0; i != selector.size(); i++) assertEquals(expected[i], selector.score(i), 0);
+        }
+    }
+}
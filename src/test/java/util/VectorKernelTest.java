@@ -0,0 +1,32 @@
+package util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class VectorKernelTest {
+
+    @Test
+    public void testPrincipalComponentIsTheCommonDirection() {
+        // Every vector is a multiple of (3, 4, 0), plus a small orthogonal noise.
+        float[][] vectors = {
+                {3, 4, 0.1f}, {6, 8, -0.1f}, null, {-3, -4, 0.2f}, {1.5f, 2, 0}
+        };
+        float[] component = VectorKernel.principalComponent(vectors, 50);
+
+        assertEquals(1, VectorKernel.norm(component), 1e-6);
+        assertEquals(0.6, Math.abs(component[0]), 1e-3);
+        assertEquals(0.8, Math.abs(component[1]), 1e-3);
+        assertEquals(0, component[2], 1e-2);
+    }
+
+    @Test
+    public void testProjectionRemoval() {
+        float[] vector = {2, 1, 5};
+        VectorKernel.removeProjection(vector, new float[] {0, 0, 1});
+        assertEquals(2, vector[0], 0);
+        assertEquals(1, vector[1], 0);
+        assertEquals(0, vector[2], 0);
+        assertEquals(null, VectorKernel.principalComponent(new float[][] {null, {0, 0}}, 10));
+    }
+}
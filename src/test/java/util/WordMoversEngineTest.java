@@ -0,0 +1,97 @@
+package util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WordMoversEngineTest {
+
+    private static final int WORDS = 3;
+
+    /**
+     * With documents of the same number of distinct words, the WMD is the cost of the best
+     * one-to-one assignment of the words, divided by their number.
+     */
+    private static double assignment(WordMoversEngine.Document a, WordMoversEngine.Document b, double[] cost) {
+        double[] similarities = new double[cost.length];
+        for (int i = 0; i != cost.length; i++) similarities[i] = -cost[i];
+        return -AlignmentSolver.maxAlignment(similarities, a.words.length, b.words.length) / a.words.length;
+    }
+
+    private static WordMoversEngine engine(Map<String, float[]> vectors) {
+        return new WordMoversEngine(vectors::get, WordMoversEngineTest::assignment);
+    }
+
+    private static String randomText(Random random, int vocabulary) {
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < WORDS) words.add("w" + random.nextInt(vocabulary));
+        return String.join(" ", words);
+    }
+
+    @Test
+    public void testBoundsAreBelowTheDistance() throws IOException {
+        Random random = new Random(1);
+        Map<String, float[]> vectors = new HashMap<>();
+        for (int w = 0; w < 100; w++) {
+            float[] vector = new float[10];
+            for (int i = 0; i != vector.length; i++) vector[i] = (float) random.nextGaussian();
+            vectors.put("w" + w, vector);
+        }
+        WordMoversEngine engine = engine(vectors);
+        for (int run = 0; run < 100; run++) {
+            WordMoversEngine.Document a = engine.document(randomText(random, 100));
+            WordMoversEngine.Document b = engine.document(randomText(random, 100));
+            double[] cost = WordMoversEngine.costs(a, b);
+            double wmd = assignment(a, b, cost);
+            double rwmd = WordMoversEngine.relaxedDistance(a, b, cost);
+            assertTrue(rwmd <= wmd + 1e-9);
+            assertTrue(WordMoversEngine.euclidean(a.centroid, b.centroid) <= wmd + 1e-6);
+        }
+    }
+
+    @Test
+    public void testPruningKeepsTheNearestCandidates() throws IOException {
+        Random random = new Random(2);
+        Map<String, float[]> vectors = new HashMap<>();
+        for (int w = 0; w < 200; w++) {
+            float[] vector = new float[10];
+            for (int i = 0; i != vector.length; i++) vector[i] = (float) random.nextGaussian();
+            vectors.put("w" + w, vector);
+        }
+        WordMoversEngine engine = engine(vectors);
+        WordMoversEngine.Document query = engine.document(randomText(random, 200));
+        WordMoversEngine.Document[] candidates = new WordMoversEngine.Document[300];
+        double[] expected = new double[candidates.length];
+        for (int i = 0; i != candidates.length; i++) {
+            candidates[i] = engine.document(randomText(random, 200));
+            expected[i] = assignment(query, candidates[i], WordMoversEngine.costs(query, candidates[i]));
+        }
+
+        double[] distances = engine.distances(query, candidates, 5, Double.POSITIVE_INFINITY, 10);
+        Arrays.sort(expected);
+        double[] solved = Arrays.stream(distances).filter(d -> !Double.isNaN(d)).sorted().toArray();
+        for (int i = 0; i < 5; i++) assertEquals(expected[i], solved[i], 1e-9);
+        assertTrue(engine.skippedSolves() > 0);
+        assertEquals(candidates.length, engine.exactSolves() + engine.skippedSolves());
+    }
+
+    @Test
+    public void testDocumentsWithoutVectors() throws IOException {
+        Map<String, float[]> vectors = new HashMap<>();
+        vectors.put("known", new float[]{1, 0});
+        WordMoversEngine engine = engine(vectors);
+        WordMoversEngine.Document query = engine.document("known unknown");
+        assertEquals(1, query.words.length);
+        assertEquals(1.0, query.weights[0], 0);
+
+        WordMoversEngine.Document[] candidates = {engine.document("unknown"), null};
+        double[] distances = engine.distances(query, candidates, 5, Double.POSITIVE_INFINITY, 10);
+        assertEquals(10, distances[0], 0);
+        assertTrue(Double.isNaN(distances[1]));
+        assertEquals(0, engine.exactSolves());
+    }
+}